@@ -0,0 +1,223 @@
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A payment series with a checkpoint of the loan's state kept every so many months, so that
+ * servicing changes don't have to replay the loan from its first month. An unscheduled extra
+ * payment or a new monthly payment in month N builds a new timeline that shares every
+ * checkpoint before month N and only works out the months from the nearest one onward.
+ * Looking up the state after any month replays at most one checkpoint interval.
+ *
+ * Timelines never change. Each change returns a new one, and the old one stays valid.
+ */
+public final class AmortizationTimeline {
+
+    public static final int DEFAULT_INTERVAL = 12;
+
+    private final PaymentSimulator simulator;
+    private final int months;
+    private final int interval;
+
+    // the regular payment from each month on, and any extras paid on top of it
+    private final NavigableMap<Integer, BigDecimal> payments;
+    private final NavigableMap<Integer, BigDecimal> extras;
+
+    // checkpoints[i] is the state after i * interval payments
+    private final LoanState[] checkpoints;
+    private final LoanState last;
+    private final int monthsWorkedOut;
+
+    private AmortizationTimeline(PaymentSimulator simulator, int months, int interval,
+                                 NavigableMap<Integer, BigDecimal> payments, NavigableMap<Integer, BigDecimal> extras,
+                                 LoanState[] shared, int sharedCount) {
+
+        this.simulator = simulator;
+        this.months = months;
+        this.interval = interval;
+        this.payments = payments;
+        this.extras = extras;
+        this.checkpoints = new LoanState[months / interval + 1];
+        System.arraycopy(shared, 0, checkpoints, 0, sharedCount);
+
+        // resume from the last checkpoint that's still good
+        LoanState state = checkpoints[sharedCount - 1];
+        int worked = 0;
+
+        while (state.getMonthsPaid() < months && !state.isPaidOff()) {
+
+            state = state.pay(simulator, paymentFor(state.getMonthsPaid() + 1));
+            worked++;
+
+            if (state.getMonthsPaid() % interval == 0) {
+
+                checkpoints[state.getMonthsPaid() / interval] = state;
+            }
+        }
+
+        // a loan paid off early has the same state from then on
+        for (int i = 1; i < checkpoints.length; i++) {
+
+            if (checkpoints[i] == null) {
+
+                checkpoints[i] = state;
+            }
+        }
+
+        this.last = state;
+        this.monthsWorkedOut = worked;
+    }
+
+    /**
+     * @param figures the balance, start date and rates to run from
+     * @param payment the amount to be applied each month
+     * @param months the number of months to apply the payment
+     */
+    public static AmortizationTimeline of(DepressingFigures figures, BigDecimal payment, int months) {
+
+        return of(figures, payment, months, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * @param interval the number of months between checkpoints
+     */
+    public static AmortizationTimeline of(DepressingFigures figures, BigDecimal payment, int months, int interval) {
+
+        if (months < 1 || interval < 1) {
+
+            CalculatorMetrics.invalid("monthsToPay");
+            throw new IllegalArgumentException("Months to pay and checkpoint interval must be at least 1");
+        }
+
+        LoanState[] start = {LoanState.start(figures.getBalancePair(), figures.getmCurrentYear(),
+                figures.getmCurrentMonth())};
+        NavigableMap<Integer, BigDecimal> payments = new TreeMap<>();
+        payments.put(1, payment);
+
+        return new AmortizationTimeline(figures.getSimulator(), months, interval,
+                Collections.unmodifiableNavigableMap(payments),
+                Collections.unmodifiableNavigableMap(new TreeMap<Integer, BigDecimal>()), start, 1);
+    }
+
+    /**
+     * @param month the payment the extra is made with, 1 for the first
+     * @param amount paid on top of the regular payment that month
+     * @return a timeline with the extra payment, sharing this one's checkpoints before that month
+     */
+    public AmortizationTimeline withExtraPayment(int month, BigDecimal amount) {
+
+        checkMonth(month);
+
+        NavigableMap<Integer, BigDecimal> changed = new TreeMap<>(extras);
+        changed.merge(month, amount, (a, b) -> a.add(b, DepressingFigures.SIG_FIGS_AND_ROUNDING));
+
+        return changedFrom(month, payments, Collections.unmodifiableNavigableMap(changed));
+    }
+
+    /**
+     * @param month the first payment made at the new amount, 1 for the first
+     * @param payment the regular payment from that month on
+     * @return a timeline with the new payment, sharing this one's checkpoints before that month
+     */
+    public AmortizationTimeline withPayment(int month, BigDecimal payment) {
+
+        checkMonth(month);
+
+        NavigableMap<Integer, BigDecimal> changed = new TreeMap<>(payments);
+        changed.put(month, payment);
+
+        return changedFrom(month, Collections.unmodifiableNavigableMap(changed), extras);
+    }
+
+    /**
+     * Re-amortizes the rest of the term: the level payment that, made from the month after the
+     * given one, pays the loan off by the end of the term. Only the remaining months are replayed.
+     * @param monthsPaid the payments already made
+     * @return the timeline with that payment from the following month on
+     */
+    public AmortizationTimeline reamortizedAfter(int monthsPaid) {
+
+        if (monthsPaid < 0 || monthsPaid >= months) {
+
+            CalculatorMetrics.invalid("month");
+            throw new IllegalArgumentException("Must re-amortize before the last payment");
+        }
+
+        LoanState state = getState(monthsPaid);
+        DepressingFigures remaining = new DepressingFigures(state.getBalance(), state.getYear(), state.getMonth(),
+                simulator.getRates());
+
+        return withPayment(monthsPaid + 1, remaining.monthlyPaymentNeeded(months - monthsPaid));
+    }
+
+    /**
+     * @param monthsPaid the number of payments made, from 0 up to the term
+     * @return the state after that many payments, or the state it was paid off in if that came first
+     */
+    public LoanState getState(int monthsPaid) {
+
+        if (monthsPaid < 0 || monthsPaid > months) {
+
+            CalculatorMetrics.invalid("month");
+            throw new IllegalArgumentException("Month must be from 0 to " + months);
+        }
+
+        LoanState state = checkpoints[monthsPaid / interval];
+
+        while (state.getMonthsPaid() < monthsPaid && !state.isPaidOff()) {
+
+            state = state.pay(simulator, paymentFor(state.getMonthsPaid() + 1));
+        }
+
+        return state;
+    }
+
+    /**
+     * @return the state after the last payment
+     */
+    public LoanState getFinalState() {
+        return last;
+    }
+
+    /**
+     * @return the total paid in the given month, the regular payment plus any extra
+     */
+    public BigDecimal paymentFor(int month) {
+
+        BigDecimal payment = payments.floorEntry(month).getValue();
+        BigDecimal extra = extras.get(month);
+
+        return extra == null ? payment : payment.add(extra, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+    }
+
+    public int getMonths() {
+        return months;
+    }
+
+    /**
+     * @return how many months had to be worked out to build this timeline, as opposed to
+     *         being taken from the one it was changed from
+     */
+    public int getMonthsWorkedOut() {
+        return monthsWorkedOut;
+    }
+
+    private AmortizationTimeline changedFrom(int month, NavigableMap<Integer, BigDecimal> newPayments,
+                                             NavigableMap<Integer, BigDecimal> newExtras) {
+
+        // the checkpoint at or before the state just ahead of the changed payment
+        int keep = (month - 1) / interval + 1;
+
+        return new AmortizationTimeline(simulator, months, interval, newPayments, newExtras, checkpoints, keep);
+    }
+
+    private void checkMonth(int month) {
+
+        if (month < 1 || month > months) {
+
+            CalculatorMetrics.invalid("month");
+            throw new IllegalArgumentException("Payment month must be from 1 to " + months);
+        }
+    }
+}
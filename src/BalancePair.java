@@ -1,12 +1,15 @@
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 /**
  * Created by bearg on 5/5/2016.
+ * Immutable, so a pair can be handed between threads and cached without copying.
+ * Use withPrincipal and withInterest to get an updated balance.
  */
-public class BalancePair {
+public final class BalancePair {
 
-    private BigDecimal principal;
-    private BigDecimal interest;
+    private final BigDecimal principal;
+    private final BigDecimal interest;
 
     public BalancePair(BigDecimal principal, BigDecimal interest) {
 
@@ -27,19 +30,19 @@ public class BalancePair {
 
         BigDecimal principal = getPrincipal();
         BigDecimal interest = getInterest();
-        principal = principal.setScale(2, BigDecimal.ROUND_HALF_EVEN);
-        interest = interest.setScale(2, BigDecimal.ROUND_HALF_EVEN);
+        principal = principal.setScale(2, RoundingMode.HALF_EVEN);
+        interest = interest.setScale(2, RoundingMode.HALF_EVEN);
 
         return "Principal: $ " + principal +
                 "\nInterest: $ " + interest;
 
     }
 
-    public void setPrincipal(final BigDecimal principal) {
-        this.principal = principal;
+    public BalancePair withPrincipal(final BigDecimal principal) {
+        return new BalancePair(principal, interest);
     }
 
-    public void setInterest(final BigDecimal interest) {
-        this.interest = interest;
+    public BalancePair withInterest(final BigDecimal interest) {
+        return new BalancePair(principal, interest);
     }
 }
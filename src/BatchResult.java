@@ -0,0 +1,83 @@
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The per-loan results of a batch run, in the same order as the loans went in, along with
+ * how long the run took. Runs over a LoanBook write their results back into the book instead,
+ * so they only report how many loans they ran.
+ */
+public class BatchResult<T> {
+
+    private final List<T> results;
+    private final int loanCount;
+    private final long elapsedNanos;
+
+    public BatchResult(List<T> results, long elapsedNanos) {
+
+        this.results = results;
+        this.loanCount = results.size();
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * A run whose results went back into a LoanBook.
+     */
+    public BatchResult(int loanCount, long elapsedNanos) {
+
+        this.results = Collections.emptyList();
+        this.loanCount = loanCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public List<T> getResults() {
+        return results;
+    }
+
+    public int getLoanCount() {
+        return loanCount;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getLoansPerSecond() {
+
+        return elapsedNanos == 0 ? 0 : loanCount * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Prints each loan's result on a line of its own, in the same order as the loans went in,
+     * the same way a scripted run prints its answers, then this summary as a # comment line.
+     * A LoanBook run only prints the summary, since its results are in the book.
+     */
+    public void printResults(PrintStream out) {
+
+        for (T result : results) {
+
+            if (result instanceof BalancePair) {
+
+                out.println(ScriptRunner.balance((BalancePair) result));
+
+            } else if (result instanceof BigDecimal) {
+
+                out.println(ScriptRunner.cents((BigDecimal) result));
+
+            } else {
+
+                out.println(result);
+            }
+        }
+
+        out.println("# " + this);
+    }
+
+    @Override
+    public String toString() {
+
+        return String.format("%d loan(s) in %.3f s (%.0f loans/s)",
+                loanCount, elapsedNanos / 1e9, getLoansPerSecond());
+    }
+}
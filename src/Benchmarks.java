@@ -0,0 +1,164 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.util.function.Supplier;
+
+/**
+ * Times every DepressingFigures mode over a range of loan sizes and terms, and reports the
+ * allocation rate and garbage collections each one causes. Run it with no arguments to
+ * benchmark everything, or pass part of a benchmark name to only run the matching ones:
+ *
+ *     java Benchmarks paymentSeries
+ *
+ * Every benchmark is warmed up before it is measured, and every result is folded into a
+ * volatile field so the JIT can't throw the work away. Output goes through the silent
+ * listener, so the numbers are for the arithmetic rather than the console.
+ */
+public class Benchmarks {
+
+    private static final long WARMUP_NANOS = 1000000000L;
+    private static final long MEASURE_NANOS = 2000000000L;
+
+    private static final String[] PRINCIPALS = {"10000", "250000", "3000000"};
+    private static final int[] TERMS = {12, 120, 360};
+    private static final BigDecimal ANNUAL_RATE = new BigDecimal("0.05125");
+    private static final int START_MONTH = 1;
+
+    // results are folded in here so the work being timed can't be optimized away
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+
+        String filter = args.length > 0 ? args[0] : "";
+
+        System.out.printf("%-28s %-24s %14s %12s %12s %8s %10s%n",
+                "benchmark", "params", "ns/op", "B/op", "MB/s alloc", "gc.count", "gc.time ms");
+
+        for (String principalStr : PRINCIPALS) {
+
+            BigDecimal principal = new BigDecimal(principalStr);
+            DepressingFigures df = new DepressingFigures(new BalancePair(principal, new BigDecimal("25.00")),
+                    START_MONTH, ANNUAL_RATE);
+            PaymentSimulator simulator = df.getSimulator();
+            PaymentSolver solver = new PaymentSolver(df);
+            String loan = "principal=" + principalStr;
+
+            // a payment that roughly pays the loan off in 10 years
+            BigDecimal payment = df.monthlyPaymentNeeded(120);
+
+            run(filter, "nextMonthBalance", loan, () -> df.nextMonthBalance(START_MONTH));
+
+            for (int term : TERMS) {
+
+                String params = loan + ",term=" + term;
+
+                run(filter, "makePaymentSeries", params,
+                        () -> df.makePaymentSeries(payment, term, PaymentListener.SILENT));
+                run(filter, "monthlyPaymentNeeded", params, () -> df.monthlyPaymentNeeded(term));
+                run(filter, "monthlyPaymentNeeded.bisect", params, () -> solver.bisect(term).getPayment());
+            }
+
+            run(filter, "makeBiMonthlyPayments", loan,
+                    () -> simulator.biMonthlyPayments(df.getBalancePair(), df.getmCurrentYear(), START_MONTH,
+                            payment, PaymentListener.SILENT));
+            run(filter, "compareMonthlyVsBimonthly", loan,
+                    () -> df.compareMonthlyVsBimonthly(payment, PaymentListener.SILENT).getInterestSaved());
+        }
+    }
+
+    private static void run(String filter, String name, String params, Supplier<Object> benchmark) {
+
+        if (!name.contains(filter)) {
+
+            return;
+        }
+
+        // warm up so the JIT has compiled the code before we start timing it
+        loop(benchmark, WARMUP_NANOS);
+
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+
+        long ops = loop(benchmark, MEASURE_NANOS);
+
+        long elapsed = System.nanoTime() - start;
+        long allocatedDuring = allocatedBytes() - allocated;
+
+        String bytesPerOp = allocated < 0 ? "n/a" : String.valueOf(allocatedDuring / ops);
+        String allocRate = allocated < 0 ? "n/a"
+                : String.format("%.1f", allocatedDuring / (elapsed / 1e9) / (1024 * 1024));
+
+        System.out.printf("%-28s %-24s %14.1f %12s %12s %8d %10d%n",
+                name, params, (double) elapsed / ops, bytesPerOp, allocRate,
+                gcCount() - gcCount, gcTime() - gcTime);
+    }
+
+    // runs the benchmark over and over for at least the given time, returning how many times it ran
+    private static long loop(Supplier<Object> benchmark, long nanos) {
+
+        long ops = 0;
+        long deadline = System.nanoTime() + nanos;
+        int hash = 0;
+
+        do {
+
+            // check the clock every few calls rather than on every one
+            for (int i = 0; i < 16; i++) {
+
+                hash ^= benchmark.get().hashCode();
+            }
+
+            ops += 16;
+
+        } while (System.nanoTime() < deadline);
+
+        sink = hash;
+
+        return ops;
+    }
+
+    // bytes allocated by this thread so far, or -1 if the JVM can't tell us
+    private static long allocatedBytes() {
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+
+        return -1;
+    }
+
+    private static long gcCount() {
+
+        long count = 0;
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+
+            count += Math.max(0, gc.getCollectionCount());
+        }
+
+        return count;
+    }
+
+    private static long gcTime() {
+
+        long time = 0;
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+
+            time += Math.max(0, gc.getCollectionTime());
+        }
+
+        return time;
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Writes schedule rows in a compact fixed-width binary format, little endian. After an 8 byte
+ * header (magic, version), every row is 56 bytes: the period as an int, the year as a short,
+ * the month and day of month as bytes, then payment, interest paid, principal paid, interest
+ * accrued, principal and interest as longs in millionths of a cent, the same units the fixed
+ * point engine uses. read() streams a file back as rows.
+ */
+public class BinaryScheduleExporter extends ScheduleExporter {
+
+    public static final int ROW_BYTES = Integer.BYTES + Short.BYTES + 2 + 6 * Long.BYTES;
+
+    private static final int MAGIC = 0x4843534C; // "LSCH"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    public BinaryScheduleExporter(Path path) throws IOException {
+
+        super(path);
+
+        ByteBuffer buffer = room(HEADER_BYTES);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION);
+    }
+
+    @Override
+    protected void encode(ScheduleRow row) throws IOException {
+
+        BalancePair balance = row.getBalance();
+
+        room(ROW_BYTES)
+                .putInt(row.getPeriod())
+                .putShort((short) row.getYear())
+                .put((byte) row.getMonth())
+                .put((byte) row.getDayOfMonth())
+                .putLong(FixedPointBalance.toUnits(row.getPayment()))
+                .putLong(FixedPointBalance.toUnits(row.getInterestPaid()))
+                .putLong(FixedPointBalance.toUnits(row.getPrincipalPaid()))
+                .putLong(FixedPointBalance.toUnits(row.getInterestAccrued()))
+                .putLong(FixedPointBalance.toUnits(balance.getPrincipal()))
+                .putLong(FixedPointBalance.toUnits(balance.getInterest()));
+    }
+
+    /**
+     * Reads an exported file back a row at a time. Close the stream to close the file.
+     * @throws IOException if the file isn't an exported schedule
+     */
+    public static Stream<ScheduleRow> read(Path path) throws IOException {
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        RowIterator rows;
+
+        try {
+
+            rows = new RowIterator(channel);
+
+        } catch (IOException | RuntimeException e) {
+
+            channel.close();
+            throw e;
+        }
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false)
+                .onClose(() -> {
+
+                    try {
+
+                        channel.close();
+
+                    } catch (IOException e) {
+
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    private static final class RowIterator implements Iterator<ScheduleRow> {
+
+        private final FileChannel mChannel;
+        private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(ROW_BYTES * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+        RowIterator(FileChannel channel) throws IOException {
+
+            mChannel = channel;
+            mBuffer.limit(0);
+
+            if (!fill(HEADER_BYTES) || mBuffer.getInt() != MAGIC || mBuffer.getInt() != VERSION) {
+
+                throw new IOException("Not an exported schedule, or a newer version of one");
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            try {
+
+                return fill(ROW_BYTES);
+
+            } catch (IOException e) {
+
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public ScheduleRow next() {
+
+            if (!hasNext()) {
+
+                throw new NoSuchElementException();
+            }
+
+            int period = mBuffer.getInt();
+            int year = mBuffer.getShort();
+            int month = mBuffer.get();
+            int dayOfMonth = mBuffer.get();
+
+            return new ScheduleRow(period, year, month, dayOfMonth, dollars(), dollars(), dollars(), dollars(),
+                    new BalancePair(dollars(), dollars()));
+        }
+
+        private BigDecimal dollars() {
+
+            return FixedPointBalance.toDollars(mBuffer.getLong());
+        }
+
+        // reads until at least the given number of bytes are buffered, or returns false at the end of the file
+        private boolean fill(int bytes) throws IOException {
+
+            if (mBuffer.remaining() >= bytes) {
+
+                return true;
+            }
+
+            mBuffer.compact();
+
+            while (mBuffer.position() < bytes) {
+
+                if (mChannel.read(mBuffer) < 0) {
+
+                    mBuffer.flip();
+
+                    if (mBuffer.hasRemaining()) {
+
+                        throw new IOException("Exported schedule ends part way through a row");
+                    }
+
+                    return false;
+                }
+            }
+
+            mBuffer.flip();
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * The minimum payments from a warm started bulk solve, in the same order as the loans went in,
+ * along with how many schedule replays the solver needed in total. If the run was also asked
+ * to solve every loan cold, from the annuity guess alone, it reports how many replays that
+ * took too, so the saving can be seen.
+ */
+public class BulkSolveResult extends BatchResult<BigDecimal> {
+
+    /**
+     * What getColdIterations returns when the cold solves weren't run.
+     */
+    public static final long NOT_MEASURED = -1;
+
+    private final long iterations;
+    private final long coldIterations;
+
+    public BulkSolveResult(List<BigDecimal> payments, long iterations, long coldIterations, long elapsedNanos) {
+
+        super(payments, elapsedNanos);
+
+        this.iterations = iterations;
+        this.coldIterations = coldIterations;
+    }
+
+    /**
+     * @return the schedule replays the warm started solves took, over every loan
+     */
+    public long getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the schedule replays solving every loan cold took, or NOT_MEASURED
+     */
+    public long getColdIterations() {
+        return coldIterations;
+    }
+
+    /**
+     * @return how many fewer replays the warm start needed than the cold solves, or
+     *         NOT_MEASURED if the cold solves weren't run
+     */
+    public long getIterationsSaved() {
+
+        return coldIterations == NOT_MEASURED ? NOT_MEASURED : coldIterations - iterations;
+    }
+
+    public double getMeanIterations() {
+
+        return getLoanCount() == 0 ? 0 : (double) iterations / getLoanCount();
+    }
+
+    @Override
+    public String toString() {
+
+        String solves = String.format(", %.2f iteration(s) per loan", getMeanIterations());
+
+        if (coldIterations != NOT_MEASURED) {
+
+            solves += String.format(" (%.2f cold, %d saved)",
+                    getLoanCount() == 0 ? 0 : (double) coldIterations / getLoanCount(), getIterationsSaved());
+        }
+
+        return super.toString() + solves;
+    }
+}
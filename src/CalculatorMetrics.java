@@ -0,0 +1,382 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts and times what the calculator does: how long each operation takes, how many schedule
+ * replays each minimum payment solve needs, how many months each payment series runs for,
+ * and how often each kind of bad input is turned away. Everything is kept in striped
+ * LongAdders, so threads recording at the same time don't contend with each other, and
+ * recording is a couple of adds on top of a System.nanoTime call.
+ *
+ * There is one set of metrics per JVM. main registers it as an MBean, and logs a summary every
+ * N seconds when started with -Dloancalcs.metrics.logSeconds=N. Timing costs two clock reads
+ * per call, which is a real share of the cheapest operations, so -Dloancalcs.metrics.timers=false
+ * turns it off and leaves only the counters.
+ */
+public final class CalculatorMetrics implements CalculatorMetricsMXBean {
+
+    public static final String OBJECT_NAME = "LoanCalcs:type=CalculatorMetrics";
+
+    private static final CalculatorMetrics INSTANCE = new CalculatorMetrics();
+
+    // constant, so the JIT drops the clock reads altogether when timers are off
+    private static final boolean TIMERS_ON =
+            !"false".equalsIgnoreCase(System.getProperty("loancalcs.metrics.timers"));
+
+    /**
+     * The operations that are timed, one per public calculator entry point.
+     */
+    public enum Operation {
+        NEXT_MONTH_BALANCE,
+        MAKE_PAYMENT,
+        PAYMENT_SERIES,
+        MONTHLY_PAYMENT_NEEDED,
+        MONTHS_TO_PAYOFF,
+        EXTRA_PAYMENT_NEEDED,
+        BIMONTHLY_PAYMENTS,
+        COMPARE,
+        EXPORT_SCHEDULE,
+        COMPARE_SWEEP,
+        EVENT_SCHEDULE,
+        MONTE_CARLO,
+        BATCH_PAYSERIES,
+        BATCH_MINPAY,
+        BATCH_MINPAY_WARM
+    }
+
+    private final Timer[] mTimers = new Timer[Operation.values().length];
+    private final Histogram mSolverIterations = new Histogram(1, 2, 3, 4, 5, 6, 8, 10, 15, 20, 30, 50, 100);
+    private final Histogram mScheduleLengths = new Histogram(1, 12, 24, 60, 120, 180, 240, 360, 480, 600);
+    private final Map<String, LongAdder> mValidationErrors = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService mLogger;
+    private ScheduledFuture<?> mLogging;
+
+    private CalculatorMetrics() {
+
+        for (int i = 0; i < mTimers.length; i++) {
+
+            mTimers[i] = new Timer();
+        }
+    }
+
+    public static CalculatorMetrics get() {
+
+        return INSTANCE;
+    }
+
+    /**
+     * @return the time to pass to time() once the call is done
+     */
+    public static long start() {
+
+        return TIMERS_ON ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records one completed call.
+     * @param startNanos what start() returned when the call started
+     */
+    public static void time(Operation operation, long startNanos) {
+
+        if (TIMERS_ON) {
+
+            INSTANCE.mTimers[operation.ordinal()].record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public static void solverIterations(int iterations) {
+
+        INSTANCE.mSolverIterations.record(iterations);
+    }
+
+    public static void scheduleLength(int months) {
+
+        INSTANCE.mScheduleLengths.record(months);
+    }
+
+    /**
+     * Counts one bad input, just before the exception for it is thrown.
+     * @param kind which input was bad, e.g. "month"
+     */
+    public static void invalid(String kind) {
+
+        INSTANCE.mValidationErrors.computeIfAbsent(kind, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Makes the metrics visible over JMX. Registering more than once does nothing.
+     */
+    public synchronized void registerMBean() {
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+
+        } catch (InstanceAlreadyExistsException e) {
+
+            // already registered
+
+        } catch (JMException e) {
+
+            throw new IllegalStateException("Couldn't register the calculator metrics MBean", e);
+        }
+    }
+
+    /**
+     * Logs the summary at INFO on a background thread every period, until stopLogging is called.
+     * Calling this again changes the period.
+     */
+    public synchronized void startLogging(long period, TimeUnit unit) {
+
+        if (mLogger == null) {
+
+            mLogger = Executors.newSingleThreadScheduledExecutor(r -> {
+
+                Thread thread = new Thread(r, "calculator-metrics-log");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        // looked up here rather than held in a static, so runs that never log don't load java.util.logging
+        Logger log = Logger.getLogger(CalculatorMetrics.class.getName());
+
+        stopLogging();
+        mLogging = mLogger.scheduleAtFixedRate(() -> log.info(getSummary()), period, period, unit);
+    }
+
+    public synchronized void stopLogging() {
+
+        if (mLogging != null) {
+
+            mLogging.cancel(false);
+            mLogging = null;
+        }
+    }
+
+    @Override
+    public Map<String, Long> getCallCounts() {
+
+        Map<String, Long> counts = new TreeMap<>();
+
+        for (Operation operation : Operation.values()) {
+
+            counts.put(operation.name(), mTimers[operation.ordinal()].count.sum());
+        }
+
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getMeanMicros() {
+
+        Map<String, Double> means = new TreeMap<>();
+
+        for (Operation operation : Operation.values()) {
+
+            means.put(operation.name(), mTimers[operation.ordinal()].meanNanos() / 1000);
+        }
+
+        return means;
+    }
+
+    @Override
+    public Map<String, Double> getMaxMicros() {
+
+        Map<String, Double> maxes = new TreeMap<>();
+
+        for (Operation operation : Operation.values()) {
+
+            maxes.put(operation.name(), mTimers[operation.ordinal()].maxNanos.get() / 1000.0);
+        }
+
+        return maxes;
+    }
+
+    @Override
+    public Map<String, Long> getSolverIterations() {
+
+        return mSolverIterations.snapshot();
+    }
+
+    @Override
+    public Map<String, Long> getScheduleLengths() {
+
+        return mScheduleLengths.snapshot();
+    }
+
+    @Override
+    public Map<String, Long> getValidationErrors() {
+
+        Map<String, Long> errors = new TreeMap<>();
+
+        for (Map.Entry<String, LongAdder> entry : mValidationErrors.entrySet()) {
+
+            errors.put(entry.getKey(), entry.getValue().sum());
+        }
+
+        return errors;
+    }
+
+    /**
+     * @return every operation that has been called, then the histograms and error counts
+     */
+    @Override
+    public String getSummary() {
+
+        StringBuilder sb = new StringBuilder("calculator metrics:");
+
+        for (Operation operation : Operation.values()) {
+
+            Timer timer = mTimers[operation.ordinal()];
+            long count = timer.count.sum();
+
+            if (count > 0) {
+
+                sb.append(String.format("%n  %-22s %10d call(s), mean %10.1f us, max %10.1f us",
+                        operation, count, timer.meanNanos() / 1000, timer.maxNanos.get() / 1000.0));
+            }
+        }
+
+        sb.append("\n  solver iterations ").append(mSolverIterations);
+        sb.append("\n  schedule lengths ").append(mScheduleLengths);
+        sb.append("\n  validation errors ").append(getValidationErrors());
+
+        return sb.toString();
+    }
+
+    @Override
+    public void reset() {
+
+        for (Timer timer : mTimers) {
+
+            timer.reset();
+        }
+
+        mSolverIterations.reset();
+        mScheduleLengths.reset();
+        mValidationErrors.clear();
+    }
+
+    private static final class Timer {
+
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        double meanNanos() {
+
+            long calls = count.sum();
+
+            return calls == 0 ? 0 : (double) totalNanos.sum() / calls;
+        }
+
+        void reset() {
+
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+    }
+
+    /**
+     * Counts values into fixed buckets, each holding everything up to its bound that the
+     * bucket before it didn't, plus one for everything above the last bound.
+     */
+    private static final class Histogram {
+
+        private final long[] mBounds;
+        private final LongAdder[] mBuckets;
+        private final LongAdder mTotal = new LongAdder();
+        private final LongAccumulator mMax = new LongAccumulator(Math::max, 0);
+
+        Histogram(long... bounds) {
+
+            mBounds = bounds;
+            mBuckets = new LongAdder[bounds.length + 1];
+
+            for (int i = 0; i < mBuckets.length; i++) {
+
+                mBuckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long value) {
+
+            // only a dozen or so bounds, so a scan is as quick as a binary search
+            int bucket = 0;
+
+            while (bucket < mBounds.length && value > mBounds[bucket]) {
+
+                bucket++;
+            }
+
+            mBuckets[bucket].increment();
+            mTotal.add(value);
+            mMax.accumulate(value);
+        }
+
+        Map<String, Long> snapshot() {
+
+            Map<String, Long> counts = new LinkedHashMap<>();
+
+            for (int i = 0; i < mBounds.length; i++) {
+
+                counts.put("<=" + mBounds[i], mBuckets[i].sum());
+            }
+
+            counts.put(">" + mBounds[mBounds.length - 1], mBuckets[mBounds.length].sum());
+
+            return counts;
+        }
+
+        void reset() {
+
+            for (LongAdder bucket : mBuckets) {
+
+                bucket.reset();
+            }
+
+            mTotal.reset();
+            mMax.reset();
+        }
+
+        @Override
+        public String toString() {
+
+            long count = 0;
+
+            for (LongAdder bucket : mBuckets) {
+
+                count += bucket.sum();
+            }
+
+            return String.format("%d recorded, mean %.1f, max %d, %s", count,
+                    count == 0 ? 0.0 : (double) mTotal.sum() / count, mMax.get(), snapshot());
+        }
+    }
+}
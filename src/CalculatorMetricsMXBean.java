@@ -0,0 +1,36 @@
+import java.util.Map;
+
+/**
+ * What CalculatorMetrics shows over JMX, under LoanCalcs:type=CalculatorMetrics.
+ * Histogram keys are bucket upper bounds, e.g. "<=12", with one ">" bucket for everything larger.
+ */
+public interface CalculatorMetricsMXBean {
+
+    /**
+     * @return how many times each operation has completed
+     */
+    Map<String, Long> getCallCounts();
+
+    Map<String, Double> getMeanMicros();
+
+    Map<String, Double> getMaxMicros();
+
+    /**
+     * @return how many schedule replays each minimum payment solve needed
+     */
+    Map<String, Long> getSolverIterations();
+
+    /**
+     * @return how many months each payment series actually ran for
+     */
+    Map<String, Long> getScheduleLengths();
+
+    /**
+     * @return how many times each kind of bad input has been turned away
+     */
+    Map<String, Long> getValidationErrors();
+
+    String getSummary();
+
+    void reset();
+}
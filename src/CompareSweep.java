@@ -0,0 +1,266 @@
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Works out the interest saved by paying bi-monthly instead of monthly over a whole grid of
+ * payments, terms and start months. Each month follows compareMonthlyVsBimonthly: half the
+ * payment on the 15th and half on the 5th of the next month, against the whole payment once a
+ * month, carried on month after month for the length of the term.
+ *
+ * The accrual factors for every calendar month the grid touches are looked up once and shared
+ * by every cell. Each payment and start month is run once out to the longest term, and the
+ * shorter terms are read off along the way, so a grid costs no more than its longest column.
+ * Those runs are split across the cores of a fork-join pool, on the fixed point arithmetic of
+ * FixedPointSimulator.
+ */
+public class CompareSweep {
+
+    private static final long EPSILON = FixedPointBalance.toUnits(DepressingFigures.EPSILON);
+
+    // the 1st payment of a bi-monthly pair comes 10 days after the 5th
+    private static final int DAYS_TO_FIRST_HALF = 10;
+
+    private final FixedPointSimulator mSimulator;
+    private final ForkJoinPool mPool;
+
+    /**
+     * @param rates the rate charged each month
+     */
+    public CompareSweep(RateSchedule rates) {
+
+        this(rates, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param rates the rate charged each month
+     * @param pool the pool the grid is split across; its parallelism decides how many cores are used
+     */
+    public CompareSweep(RateSchedule rates, ForkJoinPool pool) {
+
+        mSimulator = new FixedPointSimulator(rates);
+        mPool = pool;
+    }
+
+    /**
+     * @param start the balance on the 5th of the first month
+     * @param startYear the year every start month is in
+     * @param payments the full amounts paid each month, either way
+     * @param terms the numbers of months to keep paying for, each at least 1
+     * @param startMonths numbers 1-12 for the months the first payment is made in
+     * @return the interest saved in every cell of the grid
+     */
+    public SweepResult run(BalancePair start, int startYear, BigDecimal[] payments, int[] terms,
+                           int[] startMonths) {
+
+        long startNanos = CalculatorMetrics.start();
+
+        int longestTerm = 0;
+
+        for (int term : terms) {
+
+            if (term < 1) {
+
+                CalculatorMetrics.invalid("monthsToPay");
+                throw new IllegalArgumentException("Months to pay must be at least 1");
+            }
+
+            longestTerm = Math.max(longestTerm, term);
+        }
+
+        for (int month : startMonths) {
+
+            LoanCalendar.checkMonth(month);
+        }
+
+        int earliestMonth = startMonths.length == 0 ? 1 : Arrays.stream(startMonths).min().getAsInt();
+
+        long principal = FixedPointBalance.toUnits(start.getPrincipal());
+        long interest = FixedPointBalance.toUnits(start.getInterest());
+
+        long[] paymentUnits = new long[payments.length];
+
+        for (int p = 0; p < payments.length; p++) {
+
+            paymentUnits[p] = FixedPointBalance.toUnits(payments[p]);
+        }
+
+        // visit the terms shortest first, so each run can fill them in as it passes them
+        Integer[] byLength = new Integer[terms.length];
+
+        for (int t = 0; t < terms.length; t++) {
+
+            byLength[t] = t;
+        }
+
+        Arrays.sort(byLength, (a, b) -> Integer.compare(terms[a], terms[b]));
+
+        int[] termOrder = new int[terms.length];
+
+        for (int t = 0; t < terms.length; t++) {
+
+            termOrder[t] = byLength[t];
+        }
+
+        MonthFactors factors = new MonthFactors(startYear, earliestMonth, 12 - earliestMonth + longestTerm);
+        long[] saved = new long[payments.length * terms.length * startMonths.length];
+        SweepResult result = new SweepResult(saved, payments.length, terms.length, startMonths.length);
+
+        // each run writes to its own cells, so the runs share nothing they could race on
+        Runnable sweep = () -> IntStream.range(0, payments.length * startMonths.length).parallel()
+                .forEach(run -> {
+
+                    int p = run / startMonths.length;
+                    int m = run % startMonths.length;
+
+                    sweepOne(principal, interest, paymentUnits[p], startMonths[m] - earliestMonth, factors,
+                            terms, termOrder, saved, result, p, m);
+                });
+
+        try {
+
+            mPool.submit(sweep).get();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Sweep was interrupted", e);
+
+        } catch (ExecutionException e) {
+
+            if (e.getCause() instanceof RuntimeException) {
+
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new IllegalStateException(e.getCause());
+        }
+
+        CalculatorMetrics.time(CalculatorMetrics.Operation.COMPARE_SWEEP, startNanos);
+
+        return result;
+    }
+
+    // runs one payment from one start month out to the longest term, recording each term on the way
+    private static void sweepOne(long startPrincipal, long startInterest, long payment, int firstMonth,
+                                 MonthFactors factors, int[] terms, int[] termOrder, long[] saved,
+                                 SweepResult result, int p, int m) {
+
+        long halfPayment = payment / 2;
+
+        long biPrincipal = startPrincipal;
+        long biInterest = startInterest;
+        long principal = startPrincipal;
+        long interest = startInterest;
+        boolean biPaidOff = false;
+        boolean paidOff = false;
+
+        int next = 0;
+
+        for (int monthsPaid = 1; next < termOrder.length; monthsPaid++) {
+
+            int month = firstMonth + monthsPaid - 1;
+
+            if (!biPaidOff) {
+
+                // from 5th to 15th of month, then the 1st half
+                biInterest += FixedPointSimulator.accrue(biPrincipal, factors.toFirstHalf[month]);
+
+                if (halfPayment <= biInterest) {
+
+                    biInterest -= halfPayment;
+
+                } else {
+
+                    biPrincipal -= halfPayment - biInterest;
+                    biInterest = 0;
+                }
+
+                // from 15th to 5th of the following month, then the 2nd half
+                biInterest += FixedPointSimulator.accrue(biPrincipal, factors.toSecondHalf[month]);
+
+                if (halfPayment <= biInterest) {
+
+                    biInterest -= halfPayment;
+
+                } else {
+
+                    biPrincipal -= halfPayment - biInterest;
+                    biInterest = 0;
+                }
+
+                biPaidOff = -biPrincipal > EPSILON;
+            }
+
+            if (!paidOff) {
+
+                // the same payment in one go, after the whole month's interest
+                interest += FixedPointSimulator.accrue(principal, factors.wholeMonth[month]);
+
+                if (payment <= interest) {
+
+                    interest -= payment;
+
+                } else {
+
+                    principal -= payment - interest;
+                    interest = 0;
+                }
+
+                paidOff = -principal > EPSILON;
+            }
+
+            while (next < termOrder.length && terms[termOrder[next]] == monthsPaid) {
+
+                saved[result.index(p, termOrder[next], m)] = principal - biPrincipal;
+                next++;
+            }
+        }
+    }
+
+    /**
+     * The scaled accrual factors for each calendar month from the earliest start month on,
+     * worked out once per sweep and read by every run.
+     */
+    private final class MonthFactors {
+
+        final long[] toFirstHalf;
+        final long[] toSecondHalf;
+        final long[] wholeMonth;
+
+        MonthFactors(int year, int month, int count) {
+
+            toFirstHalf = new long[count];
+            toSecondHalf = new long[count];
+            wholeMonth = new long[count];
+
+            RateSchedule rates = mSimulator.getRates();
+
+            for (int i = 0; i < count; i++) {
+
+                int days = rates.daysInMonth(year, month);
+                int nextYear = LoanCalendar.yearOfMonthAfter(year, month);
+                int nextMonth = LoanCalendar.monthAfter(month);
+
+                toFirstHalf[i] = mSimulator.accrualFactor(year, month, DAYS_TO_FIRST_HALF);
+                wholeMonth[i] = mSimulator.accrualFactor(year, month, days);
+
+                // if the rate changes on the 1st, the days from then to the 5th are at the new rate
+                if (rates.segmentFor(year, month) == rates.segmentFor(nextYear, nextMonth)) {
+
+                    toSecondHalf[i] = mSimulator.accrualFactor(year, month, days - DAYS_TO_FIRST_HALF);
+
+                } else {
+
+                    toSecondHalf[i] = mSimulator.accrualFactor(year, month, days - DAYS_TO_FIRST_HALF - 4)
+                            + mSimulator.accrualFactor(nextYear, nextMonth, 4);
+                }
+
+                year = nextYear;
+                month = nextMonth;
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Checks that DepressingFigures and PaymentQuoteCache give the same answers when shared
+ * between threads as they do on one. Every mode is worked out once on a single thread, then
+ * the given number of threads (default twice the processors) all start together and ask the
+ * same questions of the same shared instances, each in its own order. The cache is kept
+ * smaller than the number of questions so quotes are evicted and solved again under contention.
+ *
+ *     java ConcurrencyCheck 16
+ *
+ * Prints a line per mismatch, if any, and exits with 1 if there were any.
+ */
+public class ConcurrencyCheck {
+
+    private static final String[] PRINCIPALS = {"10000", "250000", "3000000"};
+    private static final int[] TERMS = {12, 120, 360};
+    private static final BigDecimal ANNUAL_RATE = new BigDecimal("0.05125");
+    private static final int START_YEAR = 2024;
+    private static final int START_MONTH = 1;
+    private static final int ROUNDS = 20;
+    private static final int CACHED_QUOTES = 4;
+
+    public static void main(String[] args) throws Exception {
+
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+
+        PaymentQuoteCache cache = new PaymentQuoteCache(CACHED_QUOTES);
+        List<DepressingFigures> shared = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<Supplier<String>> questions = new ArrayList<>();
+
+        for (String principalStr : PRINCIPALS) {
+
+            DepressingFigures df = new DepressingFigures(
+                    new BalancePair(new BigDecimal(principalStr), new BigDecimal("25.00")),
+                    START_YEAR, START_MONTH, ANNUAL_RATE, DayCount.ACTUAL_365_25);
+            BigDecimal payment = df.monthlyPaymentNeeded(120);
+            String loan = "principal=" + principalStr;
+
+            shared.add(df);
+
+            add(names, questions, "nextMonthBalance " + loan, () -> df.nextMonthBalance(START_MONTH).toString());
+            add(names, questions, "makeBiMonthlyPayments " + loan,
+                    () -> df.makeBiMonthlyPayments(payment, PaymentListener.SILENT).toString());
+            add(names, questions, "compareMonthlyVsBimonthly " + loan,
+                    () -> df.compareMonthlyVsBimonthly(payment, PaymentListener.SILENT).getInterestSaved()
+                            .toPlainString());
+            add(names, questions, "monthsToPayoff " + loan, () -> String.valueOf(df.monthsToPayoff(payment)));
+
+            for (int term : TERMS) {
+
+                String params = loan + ",term=" + term;
+
+                add(names, questions, "makePaymentSeries " + params,
+                        () -> df.makePaymentSeries(payment, term, PaymentListener.SILENT).toString());
+                add(names, questions, "paymentSeriesTotals " + params,
+                        () -> df.paymentSeriesTotals(payment, term, PaymentListener.SILENT).toString());
+                add(names, questions, "monthlyPaymentNeeded " + params,
+                        () -> df.monthlyPaymentNeeded(term).toPlainString());
+                add(names, questions, "quoteCache " + params,
+                        () -> cache.monthlyPaymentNeeded(df, term).toPlainString());
+                add(names, questions, "extraPrincipalNeeded " + params,
+                        () -> df.extraPrincipalNeeded(payment, term).toPlainString());
+            }
+        }
+
+        // the answers on one thread, before anything is shared
+        List<String> expected = new ArrayList<>();
+        List<BalancePair> balances = new ArrayList<>();
+
+        for (Supplier<String> question : questions) {
+
+            expected.add(question.get());
+        }
+
+        for (DepressingFigures df : shared) {
+
+            balances.add(df.getBalancePair());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Integer>> workers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+
+            int offset = t;
+
+            workers.add(executor.submit(() -> {
+
+                go.await();
+
+                int mismatches = 0;
+
+                for (int round = 0; round < ROUNDS; round++) {
+
+                    // each thread starts somewhere else, so different modes run at the same time
+                    for (int i = 0; i < questions.size(); i++) {
+
+                        int q = (i + offset * 7 + round) % questions.size();
+                        String answer = questions.get(q).get();
+
+                        if (!answer.equals(expected.get(q))) {
+
+                            System.out.println("MISMATCH " + names.get(q) + ": expected "
+                                    + expected.get(q).replace('\n', ' ') + " but got " + answer.replace('\n', ' '));
+                            mismatches++;
+                        }
+                    }
+                }
+
+                return mismatches;
+            }));
+        }
+
+        long start = System.nanoTime();
+        go.countDown();
+
+        int mismatches = 0;
+
+        for (Future<Integer> worker : workers) {
+
+            mismatches += worker.get();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        // nothing may have changed the shared instances' own balances either
+        for (int i = 0; i < shared.size(); i++) {
+
+            if (shared.get(i).getBalancePair() != balances.get(i)) {
+
+                System.out.println("MISMATCH balance of principal=" + PRINCIPALS[i] + " was replaced");
+                mismatches++;
+            }
+        }
+
+        System.out.printf("%d thread(s) x %d round(s) x %d question(s) in %.1f s, %d mismatch(es)%n",
+                threads, ROUNDS, questions.size(), elapsed / 1e9, mismatches);
+        System.out.println("Quote cache: " + cache);
+
+        if (mismatches > 0) {
+
+            System.exit(1);
+        }
+    }
+
+    private static void add(List<String> names, List<Supplier<String>> questions, String name,
+                            Supplier<String> question) {
+
+        names.add(name);
+        questions.add(question);
+    }
+}
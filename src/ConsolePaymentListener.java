@@ -0,0 +1,38 @@
+import java.math.BigDecimal;
+
+/**
+ * Prints the simulator's progress to the console, the way the interactive modes always have.
+ */
+public class ConsolePaymentListener implements PaymentListener {
+
+    @Override
+    public void onTryingPayment(BigDecimal payment, int monthsToPay) {
+
+        System.out.printf("\nTrying amount $ %.2f for %d months\n", payment, monthsToPay);
+    }
+
+    @Override
+    public void onMonthPaid(int monthsPaid, BalancePair balance) {
+
+        System.out.println("Balance in " + monthsPaid + " month(s): \n" + balance + "\n");
+    }
+
+    @Override
+    public void onPaidOff(int lastMonth) {
+
+        System.out.println("Loan is fully paid after month " + lastMonth);
+    }
+
+    @Override
+    public void onBiMonthlyPayment(int dayOfMonth, BalancePair balance) {
+
+        String day = dayOfMonth == 15 ? "15th" : "5th";
+        System.out.println("Making payment on " + day + " with balance \n" + balance);
+    }
+
+    @Override
+    public void onBiMonthlyPaid(BalancePair balance) {
+
+        System.out.println("Balance after payment on 5th: " + balance);
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Writes schedule rows as CSV, one line per payment under a header line. Dates are
+ * yyyy-mm for monthly rows and yyyy-mm-dd for rows paid on a given day, and amounts are
+ * written in full, without rounding to cents.
+ */
+public class CsvScheduleExporter extends ScheduleExporter {
+
+    public static final String HEADER =
+            "period,date,payment,interest_paid,principal_paid,interest_accrued,principal,interest";
+
+    // far longer than any row of 20 significant digit amounts
+    private static final int MAX_LINE_BYTES = 512;
+
+    private final StringBuilder mLine = new StringBuilder(MAX_LINE_BYTES);
+
+    public CsvScheduleExporter(Path path) throws IOException {
+
+        super(path);
+
+        mLine.append(HEADER).append('\n');
+        put();
+    }
+
+    @Override
+    protected void encode(ScheduleRow row) throws IOException {
+
+        mLine.append(row.getPeriod()).append(',').append(row.getYear()).append('-');
+        twoDigits(row.getMonth());
+
+        if (row.getDayOfMonth() > 0) {
+
+            mLine.append('-');
+            twoDigits(row.getDayOfMonth());
+        }
+
+        amount(row.getPayment());
+        amount(row.getInterestPaid());
+        amount(row.getPrincipalPaid());
+        amount(row.getInterestAccrued());
+        amount(row.getBalance().getPrincipal());
+        amount(row.getBalance().getInterest());
+        mLine.append('\n');
+
+        put();
+    }
+
+    private void twoDigits(int value) {
+
+        if (value < 10) {
+
+            mLine.append('0');
+        }
+
+        mLine.append(value);
+    }
+
+    private void amount(BigDecimal value) {
+
+        mLine.append(',').append(value.toPlainString());
+    }
+
+    // the line is all ASCII, so each char goes in as a single byte
+    private void put() throws IOException {
+
+        if (mLine.length() > MAX_LINE_BYTES) {
+
+            throw new IllegalArgumentException("Schedule row is too long to export: " + mLine);
+        }
+
+        ByteBuffer buffer = room(mLine.length());
+
+        for (int i = 0; i < mLine.length(); i++) {
+
+            buffer.put((byte) mLine.charAt(i));
+        }
+
+        mLine.setLength(0);
+    }
+}
@@ -0,0 +1,96 @@
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * The standard day count conventions: how many days of interest a month accrues, and how
+ * many days the yearly rate is spread over. ACTUAL_365_25 is what the calculator has always used.
+ */
+public enum DayCount {
+
+    ACTUAL_365("Actual/365", true, new BigDecimal("365")),
+    ACTUAL_365_25("Actual/365.25", true, new BigDecimal("365.25")),
+    ACTUAL_360("Actual/360", true, new BigDecimal("360")),
+    THIRTY_360("30/360", false, new BigDecimal("360"));
+
+    private final String label;
+    private final boolean actualDays;
+    private final BigDecimal daysPerYear;
+
+    DayCount(String label, boolean actualDays, BigDecimal daysPerYear) {
+
+        this.label = label;
+        this.actualDays = actualDays;
+        this.daysPerYear = daysPerYear;
+    }
+
+    /**
+     * @param month a number 1-12 that represents that month
+     *                    in the calendar year
+     * @return the days of interest that month accrues under this convention
+     */
+    public int daysInMonth(int year, int month) {
+
+        if (actualDays) {
+
+            return LoanCalendar.daysInMonth(year, month);
+        }
+
+        LoanCalendar.checkMonth(month);
+
+        return 30;
+    }
+
+    /**
+     * @return the days of interest from one date to a later one under this convention. 30/360
+     *         counts every month as 30 days, treating the 31st as the 30th
+     */
+    public int daysBetween(LocalDate from, LocalDate to) {
+
+        if (actualDays) {
+
+            return (int) (to.toEpochDay() - from.toEpochDay());
+        }
+
+        int fromDay = Math.min(from.getDayOfMonth(), 30);
+        int toDay = to.getDayOfMonth() == 31 && fromDay == 30 ? 30 : to.getDayOfMonth();
+
+        return 360 * (to.getYear() - from.getYear()) + 30 * (to.getMonthValue() - from.getMonthValue())
+                + toDay - fromDay;
+    }
+
+    /**
+     * @param annualRate the yearly interest rate as a decimal, e.g. 0.05125 for 5.125%
+     * @return the rate charged per day under this convention
+     */
+    public BigDecimal dailyRate(BigDecimal annualRate) {
+
+        return annualRate.divide(daysPerYear, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+    }
+
+    public BigDecimal getDaysPerYear() {
+        return daysPerYear;
+    }
+
+    /**
+     * Accepts either the label, e.g. "30/360", or the constant name, e.g. "THIRTY_360".
+     */
+    public static DayCount parse(String name) {
+
+        for (DayCount dayCount : values()) {
+
+            if (dayCount.label.equalsIgnoreCase(name) || dayCount.name().equalsIgnoreCase(name)) {
+
+                return dayCount;
+            }
+        }
+
+        CalculatorMetrics.invalid("dayCount");
+        throw new IllegalArgumentException("Not a valid day count convention: " + name);
+    }
+
+    @Override
+    public String toString() {
+
+        return label;
+    }
+}
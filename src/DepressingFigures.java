@@ -1,29 +1,42 @@
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.function.BiPredicate;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
  * Created by bearg on 5/5/2016.
  * This class does various calculations regarding loans.
- * The getDaysFromMonth method assumes 28 days in February at present.
- * TODO: Add ability to track track total interest paid
+ * Days are counted with a DayCount convention, which knows about leap years.
+ * Instances never change once built: every mode works out new balances and returns them,
+ * so one instance can be shared between threads.
+ * paymentSeriesTotals adds up the total interest and principal paid as the series runs.
  */
 public class DepressingFigures {
 
     // first param is number of sig figs to use. need to give MathContext so BigDecimal divide method
     // doesn't throw an exception if the result is an non-terminating decimal
-    private static final MathContext SIG_FIGS_AND_ROUNDING = new MathContext(20, RoundingMode.HALF_EVEN);
+    static final MathContext SIG_FIGS_AND_ROUNDING = new MathContext(20, RoundingMode.HALF_EVEN);
 
 
     // don't pass double 0.05125 in directly -- pass it as a String
-    // 5.125% interest rate, divided by 365.25 to get daily rate and again by 100 to get a decimal
-    private static final BigDecimal INTEREST_RATE = new BigDecimal("0.05125")
-            .divide(new BigDecimal("365.25"), SIG_FIGS_AND_ROUNDING);
+    // 5.125% interest rate, divided by 100 to get a decimal. the DayCount convention
+    // decides how many days it is spread over to get the daily rate
+    static final BigDecimal ANNUAL_RATE = new BigDecimal("0.05125");
 
-    private static final BigDecimal EPSILON = new BigDecimal("1.00");
+    static final BigDecimal EPSILON = new BigDecimal("1.00");
     // be within this dollar amount of $0.00 at the end
     // for both the principal and interest due
 
@@ -31,7 +44,8 @@ public class DepressingFigures {
             "minpay: provide the number of months that you want to pay off the loan in." +
                     " This calculates the minimum monthly payment you need to make to do that.\n\n" +
                     "payseries: provide a payment to make and the number of months to make it, and this shows" +
-                    " you the balance at the end of each month until then.\n\n" +
+                    " you the balance at the end of each month until then, and the total interest and principal" +
+                    " paid, with the interest paid in each year.\n\n" +
                     "nextbal: next month's balance if you let interest accumulate the entire month\n\n" +
                     "bipay: provide a payment amount that will be split into two equal amounts, one to be" +
                     " paid on the 15th and the other on the 5th of the following month. displays the balance " +
@@ -41,18 +55,79 @@ public class DepressingFigures {
 
 
 
-    private BalancePair mBalancePair;
-    private int mCurrentMonth;
+    private static final PaymentListener CONSOLE = new ConsolePaymentListener();
+
+    // how far ahead monthsToPayoff looks by default, 100 years
+    static final int MAX_PAYOFF_MONTHS = 1200;
+
+    // the bounds on rates and start years taken from scripts and HTTP requests
+    static final BigDecimal MAX_ANNUAL_RATE = BigDecimal.ONE;
+    static final int MIN_YEAR = 1900;
+    static final int MAX_YEAR = 2200;
+
+    private final PaymentSimulator mSimulator;
+    private final BalancePair mBalancePair;
+    private final int mCurrentYear;
+    private final int mCurrentMonth;
 
     public int getmCurrentMonth() {
         return mCurrentMonth;
     }
 
+    public int getmCurrentYear() {
+        return mCurrentYear;
+    }
+
     public DepressingFigures(BalancePair pair) {
 
         mBalancePair = pair;
-        mCurrentMonth = Calendar.getInstance().get(Calendar.MONTH);
-        mCurrentMonth++; // Calendar is 0 indexed, so we must add 1 to the actual month number
+        mSimulator = new PaymentSimulator();
+        Calendar today = Calendar.getInstance();
+        mCurrentYear = today.get(Calendar.YEAR);
+        // Calendar is 0 indexed, so we must add 1 to the actual month number
+        mCurrentMonth = today.get(Calendar.MONTH) + 1;
+    }
+
+    /**
+     * Starts in the given month of the current year, counting days Actual/365.25.
+     * @param startMonth a number 1-12 for the month the first payment is made in
+     * @param annualRate the yearly interest rate as a decimal, e.g. 0.05125 for 5.125%
+     */
+    public DepressingFigures(BalancePair pair, int startMonth, BigDecimal annualRate) {
+
+        this(pair, Calendar.getInstance().get(Calendar.YEAR), startMonth, annualRate, DayCount.ACTUAL_365_25);
+    }
+
+    /**
+     * @param startYear the year the first payment is made in
+     * @param startMonth a number 1-12 for the month the first payment is made in
+     * @param annualRate the yearly interest rate as a decimal, e.g. 0.05125 for 5.125%
+     * @param dayCount how days are counted, and how many days the yearly rate is spread over
+     */
+    public DepressingFigures(BalancePair pair, int startYear, int startMonth, BigDecimal annualRate,
+                             DayCount dayCount) {
+
+        this(pair, startYear, startMonth, RateSchedule.fixed(annualRate, dayCount));
+    }
+
+    /**
+     * @param startYear the year the first payment is made in
+     * @param startMonth a number 1-12 for the month the first payment is made in
+     * @param rates the rate charged each month, which may change over the life of the loan
+     */
+    public DepressingFigures(BalancePair pair, int startYear, int startMonth, RateSchedule rates) {
+
+        this(pair, startYear, startMonth, new PaymentSimulator(rates));
+    }
+
+    private DepressingFigures(BalancePair pair, int startYear, int startMonth, PaymentSimulator simulator) {
+
+        LoanCalendar.checkMonth(startMonth);
+
+        mBalancePair = pair;
+        mSimulator = simulator;
+        mCurrentYear = startYear;
+        mCurrentMonth = startMonth;
     }
 
     public BalancePair getBalancePair() {
@@ -60,17 +135,42 @@ public class DepressingFigures {
         return mBalancePair;
     }
 
+    /**
+     * @return a calculator with the same month and rate as this one, starting from another balance
+     */
+    public DepressingFigures withBalance(BalancePair pair) {
+
+        return new DepressingFigures(pair, mCurrentYear, mCurrentMonth, mSimulator);
+    }
+
+    /**
+     * @return a calculator with the same balance and month as this one, charging other rates
+     */
+    public DepressingFigures withRates(RateSchedule rates) {
+
+        return new DepressingFigures(mBalancePair, mCurrentYear, mCurrentMonth, mSimulator.withRates(rates));
+    }
+
+    public PaymentSimulator getSimulator() {
+
+        return mSimulator;
+    }
+
     /**
      *
      * @return balance after a month of interest accumulation
      */
     public BalancePair nextMonthBalance(int monthNumber) {
 
+        long start = CalculatorMetrics.start();
+
         // added accumulated interest to starting interest
         BigDecimal interest = mBalancePair.getInterest()
                 .add(monthlyInterestAccumulated(monthNumber), SIG_FIGS_AND_ROUNDING);
         BigDecimal principal = mBalancePair.getPrincipal();
 
+        CalculatorMetrics.time(CalculatorMetrics.Operation.NEXT_MONTH_BALANCE, start);
+
         return new BalancePair(principal, interest);
     }
 
@@ -83,368 +183,532 @@ public class DepressingFigures {
      */
     public BigDecimal monthlyInterestAccumulated(int monthNumber) {
 
-        int days;
+        return mSimulator.monthlyInterest(mBalancePair.getPrincipal(), yearOf(monthNumber), monthNumber);
+    }
 
-        days = getDaysFromMonth(monthNumber);
+    /**
+     *
+     *
+     * @param month a number 1-12 that represents that month
+     *                    in the calendar year. months before the start month are taken
+     *                    to be in the following year
+     * @return the number of days of interest in that month
+     */
+    public int getDaysFromMonth(final int month) {
 
-        return mBalancePair.getPrincipal()
-                .multiply(INTEREST_RATE, SIG_FIGS_AND_ROUNDING)
-                .multiply(new BigDecimal(days), SIG_FIGS_AND_ROUNDING);
+        return mSimulator.daysInMonth(yearOf(month), month);
+    }
+
+    // months before the start month are taken to be in the following year
+    private int yearOf(int month) {
+
+        return month < mCurrentMonth ? mCurrentYear + 1 : mCurrentYear;
     }
 
     /**
-     *
-     * @param daysSinceLastPayment the number of daysSinceLastPayment since last payment was made.
-     *                             used to calculate the accumulated interest
-     *                             since then
-     * @return the dollar amount of interest that has accumulated in the last N daysSinceLastPayment since last payment
+     * Shows the balance 1 month from now if you make the payment on the current date
+     * @param payment the payment amount as a BigDecimal
+     * @return the balance once the payment has been applied
      */
-    private BigDecimal interestAccumulated(int daysSinceLastPayment) {
+    public BalancePair makePayment(BigDecimal payment) {
+
+        long start = CalculatorMetrics.start();
+        BalancePair balance = mSimulator.makePayment(mBalancePair, payment);
+        CalculatorMetrics.time(CalculatorMetrics.Operation.MAKE_PAYMENT, start);
 
-        return mBalancePair.getPrincipal()
-                .multiply(INTEREST_RATE, SIG_FIGS_AND_ROUNDING)
-                .multiply(new BigDecimal(daysSinceLastPayment), SIG_FIGS_AND_ROUNDING);
+        return balance;
     }
 
     /**
-     *
-     *
-     * @param month a number 1-12 that represents that month
-     *                    in the calendar year
-     * @return the number of days in that month
+     * This method calculates and prints the principal and interest balance after each month for the
+     * number of months specified when the payment is applied each month.
+     * @param payment the amount to be applied each month
+     * @param monthsToPay the number of months to apply the payment
+     * @return the balance after the last payment
      */
-    public int getDaysFromMonth(final int month) {
+    public BalancePair makePaymentSeries(BigDecimal payment, int monthsToPay) {
 
-        final int days;
+        return makePaymentSeries(payment, monthsToPay, CONSOLE);
+    }
 
-        List<Integer> monthsWith30Days = new ArrayList<>();
-        monthsWith30Days.add(4);
-        monthsWith30Days.add(6);
-        monthsWith30Days.add(9);
-        monthsWith30Days.add(11);
+    /**
+     * Runs the same payment series, reporting each month to the listener instead of the console.
+     * @param payment the amount to be applied each month
+     * @param monthsToPay the number of months to apply the payment
+     * @param listener told about each month, or PaymentListener.SILENT
+     * @return the balance after the last payment
+     */
+    public BalancePair makePaymentSeries(BigDecimal payment, int monthsToPay, PaymentListener listener) {
 
-        List<Integer> monthsWith31Days = new ArrayList<>();
-        monthsWith31Days.add(1);
-        monthsWith31Days.add(3);
-        monthsWith31Days.add(5);
-        monthsWith31Days.add(7);
-        monthsWith31Days.add(8);
-        monthsWith31Days.add(10);
-        monthsWith31Days.add(12);
+        long start = CalculatorMetrics.start();
+        BalancePair balance = mSimulator.paymentSeries(mBalancePair, mCurrentYear, mCurrentMonth, payment,
+                monthsToPay, listener);
+        CalculatorMetrics.time(CalculatorMetrics.Operation.PAYMENT_SERIES, start);
 
+        return balance;
+    }
 
-        // not included in the above is February, which we'll handle separately
+    /**
+     * Runs the same payment series, adding up as it goes how much of the payments went to
+     * interest and how much to principal, in total and by calendar year.
+     * @param payment the amount to be applied each month
+     * @param monthsToPay the number of months to apply the payment
+     * @param listener told about each month, or PaymentListener.SILENT
+     * @return the balance after the last payment along with the totals paid
+     */
+    public PaymentTotals paymentSeriesTotals(BigDecimal payment, int monthsToPay, PaymentListener listener) {
 
-        if (monthsWith31Days.contains(month)) {
+        long start = CalculatorMetrics.start();
+        PaymentTotals totals = mSimulator.paymentSeriesTotals(mBalancePair, mCurrentYear, mCurrentMonth, payment,
+                monthsToPay, listener);
+        CalculatorMetrics.time(CalculatorMetrics.Operation.PAYMENT_SERIES, start);
 
-            days = 31;
-        }
+        return totals;
+    }
 
-        else if (monthsWith30Days.contains(month)) {
+    /**
+     * The payment series as a lazily worked out stream of rows. To get the balance in month N
+     * without working out the months after it, skip N - 1 rows and take the next one.
+     * @param payment the amount to be applied each month
+     * @param monthsToPay the most months to apply the payment for
+     */
+    public Stream<ScheduleRow> paymentSchedule(BigDecimal payment, int monthsToPay) {
 
-            days = 30;
-        }
+        return mSimulator.paymentSchedule(mBalancePair, mCurrentYear, mCurrentMonth, payment, monthsToPay);
+    }
+
+    /**
+     * The payment series with checkpoints along the way, for servicing changes such as extra
+     * payments that then only need the months after them worked out again.
+     * @param payment the amount to be applied each month
+     * @param monthsToPay the number of months to apply the payment
+     */
+    public AmortizationTimeline amortizationTimeline(BigDecimal payment, int monthsToPay) {
 
-        else if (month == 2) { // February
+        return AmortizationTimeline.of(this, payment, monthsToPay);
+    }
 
-            days = 28;
-        }
+    /**
+     * Writes the payment series to the exporter as it is worked out, a row at a time.
+     * @param payment the amount to be applied each month
+     * @param monthsToPay the most months to apply the payment for
+     * @return the number of rows written
+     */
+    public long exportSchedule(BigDecimal payment, int monthsToPay, ScheduleExporter exporter) throws IOException {
+
+        long start = CalculatorMetrics.start();
 
-        else {
+        try (Stream<ScheduleRow> rows = paymentSchedule(payment, monthsToPay)) {
 
-            throw new IllegalArgumentException("Not a valid month. Must be a number from 1 to 12");
+            long written = exporter.writeAll(rows);
+            CalculatorMetrics.time(CalculatorMetrics.Operation.EXPORT_SCHEDULE, start);
+
+            return written;
         }
+    }
 
-        return days;
+    /**
+     * Calculates the minimum monthly payment needed to pay off the loan within the
+     * specified number of months.
+     * @param monthsToPayoff the number of months to fully pay off the balance
+     * @return the minimum monthly payment needed
+     */
+    public BigDecimal monthlyPaymentNeeded(int monthsToPayoff) {
 
+        return monthlyPaymentNeeded(monthsToPayoff, PaymentListener.SILENT);
     }
 
     /**
-     * Shows the balance 1 month from now if you make the payment on the current date
-     * @param payment the payment amount as a BigDecimal
+     * Same as above, but reports each guessed payment and the schedule it produced to the listener.
      */
-    public void makePayment(BigDecimal payment) {
+    public BigDecimal monthlyPaymentNeeded(int monthsToPayoff, PaymentListener listener) {
 
+        long start = CalculatorMetrics.start();
+        BigDecimal payment = new PaymentSolver(this, listener).solve(monthsToPayoff).getPayment();
+        CalculatorMetrics.time(CalculatorMetrics.Operation.MONTHLY_PAYMENT_NEEDED, start);
 
+        return payment;
+    }
 
-        // apply payment to interest first
-        final BigDecimal interest = mBalancePair.getInterest();
+    /**
+     * Same as monthlyPaymentNeeded, worked out as carefully as asked. A screening answer comes
+     * from the double engine alone. A verified one does too, unless its final principal came
+     * within Precision.VERIFY_MARGIN of EPSILON, in which case the payment is checked with
+     * BigDecimals and the search carried on from it if it falls short. Either way a verified
+     * payment meets the same EPSILON test as an exact one, though it needn't be the same to the cent.
+     * @param monthsToPayoff the number of months to fully pay off the balance
+     * @return the minimum monthly payment needed
+     */
+    public BigDecimal monthlyPaymentNeeded(int monthsToPayoff, Precision precision) {
 
-        if (payment.compareTo(interest) < 1) { // payment is less than or equal to current interest
+        if (precision == Precision.EXACT) {
 
-            BigDecimal newInterest = interest.subtract(payment, SIG_FIGS_AND_ROUNDING);
-            mBalancePair.setInterest(newInterest);
+            return monthlyPaymentNeeded(monthsToPayoff);
         }
 
-        else {
-            // calculate amount to apply to principal
-            BigDecimal appliedToPrincipal = payment.subtract(interest, SIG_FIGS_AND_ROUNDING);
+        long start = CalculatorMetrics.start();
+
+        DoubleSimulator fast = new DoubleSimulator(mSimulator.getRates());
+        double principal = mBalancePair.getPrincipal().doubleValue();
+        double interest = mBalancePair.getInterest().doubleValue();
+
+        double fastPayment = fast.monthlyPaymentNeeded(principal, interest, mCurrentYear, mCurrentMonth,
+                monthsToPayoff);
+        BigDecimal payment = new BigDecimal(fastPayment, SIG_FIGS_AND_ROUNDING);
 
-            // payment was more than interest -- set it to $0.00
-            mBalancePair.setInterest(new BigDecimal("0.00"));
+        double left = fast.principalAfterPayments(principal, interest, mCurrentYear, mCurrentMonth, fastPayment,
+                monthsToPayoff);
 
-            // get current principal, subtract the amount from it
-            BigDecimal currentPrincipal = mBalancePair.getPrincipal();
-            mBalancePair.setPrincipal(currentPrincipal.subtract(appliedToPrincipal, SIG_FIGS_AND_ROUNDING));
+        if (precision == Precision.VERIFIED && Math.abs(left) > EPSILON.doubleValue() - Precision.VERIFY_MARGIN) {
+
+            // too close to call: the first thing the search does is replay the payment exactly,
+            // and it only keeps going if that's not within EPSILON
+            payment = new PaymentSolver(this).solveFrom(monthsToPayoff, payment, BigDecimal.ZERO, null).getPayment();
         }
 
+        CalculatorMetrics.time(CalculatorMetrics.Operation.MONTHLY_PAYMENT_NEEDED, start);
+
+        return payment;
     }
 
     /**
-     * This method calculates and prints the principal and interest balance after each month for the
-     * number of months specified when the payment is applied each month.
+     * How many months the payment takes to pay the loan off, looking up to 100 years ahead.
      * @param payment the amount to be applied each month
-     * @param monthsToPay the number of months to apply the payment
+     * @return the number of payments, or PaymentSolver.NEVER if it doesn't pay the loan off
      */
-    public void makePaymentSeries(BigDecimal payment, int monthsToPay) {
+    public int monthsToPayoff(BigDecimal payment) {
 
-        int currentMonth = getmCurrentMonth(); // used by monthlyInterestAccumulated
-        // to get the number of days before next payment due date
+        return monthsToPayoff(payment, MAX_PAYOFF_MONTHS);
+    }
 
-        // number of months we've made the payment
-        int monthsPaid = 0;
+    /**
+     * @param maxMonths the most months to look ahead
+     */
+    public int monthsToPayoff(BigDecimal payment, int maxMonths) {
 
+        long start = CalculatorMetrics.start();
+        int months = new PaymentSolver(this).monthsToPayoff(payment, maxMonths);
+        CalculatorMetrics.time(CalculatorMetrics.Operation.MONTHS_TO_PAYOFF, start);
 
-        while (monthsToPay > 0) {
+        return months;
+    }
 
-            makePayment(payment); // interest should be recalculated after we make a payment
-            BigDecimal currentInterest = mBalancePair.getInterest();
+    /**
+     * Same as monthsToPayoff, worked out as carefully as asked. A verified answer is worked out
+     * again with BigDecimals if the principal came within Precision.VERIFY_MARGIN of EPSILON in
+     * the month it was paid off or the month before, so it's always the same as the exact answer.
+     * @param maxMonths the most months to look ahead
+     */
+    public int monthsToPayoff(BigDecimal payment, int maxMonths, Precision precision) {
 
-            monthsToPay--;
+        if (precision == Precision.EXACT) {
 
-            // need to calculate interest that accumulates in the month between payments
-            // and set the interest to be that amount + the current interest
-            mBalancePair.setInterest(currentInterest
-                    .add(monthlyInterestAccumulated(currentMonth), SIG_FIGS_AND_ROUNDING));
+            return monthsToPayoff(payment, maxMonths);
+        }
 
-            if (currentMonth == 12) {
+        long start = CalculatorMetrics.start();
 
-                currentMonth = 1;
-            }
+        int months = new DoubleSimulator(mSimulator.getRates()).monthsToPayoff(
+                mBalancePair.getPrincipal().doubleValue(), mBalancePair.getInterest().doubleValue(), mCurrentYear,
+                mCurrentMonth, payment.doubleValue(), maxMonths,
+                precision == Precision.VERIFIED ? Precision.VERIFY_MARGIN : 0);
 
-            else {
-                currentMonth++;
-            }
+        if (months == DoubleSimulator.UNSURE) {
 
-            // update count of elapsed months by 1
-            monthsPaid++;
+            months = new PaymentSolver(this).monthsToPayoff(payment, maxMonths);
+        }
 
-            System.out.println("Balance in " + monthsPaid + " month(s): \n" + mBalancePair + "\n");
+        CalculatorMetrics.time(CalculatorMetrics.Operation.MONTHS_TO_PAYOFF, start);
 
-            // if balance goes lower than EPSILON less than 0.00, stop making payments
-            BigDecimal amountBelowZero = new BigDecimal("0.00")
-                    .subtract(mBalancePair.getPrincipal(), SIG_FIGS_AND_ROUNDING);
+        return months;
+    }
 
-            if (amountBelowZero.compareTo(EPSILON) > 0) {
+    /**
+     * The smallest one-time extra principal payment, made now on top of the regular payment,
+     * that has the loan paid off within the given number of months.
+     * @param payment the amount to be applied each month
+     * @param monthsToPayoff the number of months to fully pay off the balance
+     */
+    public BigDecimal extraPrincipalNeeded(BigDecimal payment, int monthsToPayoff) {
 
-                System.out.println("Loan is fully paid after month " + (monthsPaid - 1));
-                break;
-            }
-        }
+        long start = CalculatorMetrics.start();
+        BigDecimal extra = new PaymentSolver(this).oneTimeExtra(payment, monthsToPayoff).getPayment();
+        CalculatorMetrics.time(CalculatorMetrics.Operation.EXTRA_PAYMENT_NEEDED, start);
 
+        return extra;
     }
 
     /**
-     * Calculates the minimum monthly payment needed to pay off the loan within the
-     * specified number of months.
+     * How much to add to the regular payment every month to have the loan paid off within the
+     * given number of months.
+     * @param payment the amount already being applied each month
      * @param monthsToPayoff the number of months to fully pay off the balance
-     * @return the minimum monthly payment needed
      */
-    public BigDecimal monthlyPaymentNeeded(int monthsToPayoff) {
+    public BigDecimal extraMonthlyPaymentNeeded(BigDecimal payment, int monthsToPayoff) {
 
+        long start = CalculatorMetrics.start();
+        BigDecimal extra = new PaymentSolver(this).recurringExtra(payment, monthsToPayoff).getPayment();
+        CalculatorMetrics.time(CalculatorMetrics.Operation.EXTRA_PAYMENT_NEEDED, start);
 
+        return extra;
+    }
 
-        int startingMonth = mCurrentMonth;
-        BigDecimal guessPayment;
-
-        // need to choose a lower and upper bound for the needed monthly payment,
-        // then binary search for the exact payment
+    /**
+     * Replays the monthly payment schedule from the current balance. Used by the solver to
+     * score each guess.
+     * @param payment the amount to be applied each month
+     * @param monthsToPay the number of months to apply the payment
+     * @param listener told about each month, or PaymentListener.SILENT
+     * @return the principal left once the last payment has been made
+     */
+    BigDecimal principalAfterPayments(BigDecimal payment, int monthsToPay, PaymentListener listener) {
 
-        BigDecimal finalAmount;
-        BigDecimal startingPrincipal = mBalancePair.getPrincipal();
-        BigDecimal startingInterest = mBalancePair.getInterest();
+        // not through makePaymentSeries, so replays aren't counted as payment series of their own
+        return mSimulator.replaySeries(mBalancePair, mCurrentYear, mCurrentMonth, payment, monthsToPay, listener)
+                .getPrincipal();
+    }
 
-        // low payment can be the amount we'd pay if we just covered the interest every month
-        // this varies slightly depending on the month, but we just need an approximate figure anyway
-        BigDecimal lowPayment = mBalancePair.getInterest();
+    public void printMinMonthlyPayment(BigDecimal minMonthlyPayment, int monthsToPayOff) {
 
-        // high payment can be the current principal
-        BigDecimal highPayment = mBalancePair.getPrincipal();
+        System.out.printf("The minimum monthly payment is $ %.2f " +
+        "for the loan to be paid off in " +
+        monthsToPayOff + " months\n", minMonthlyPayment);
+    }
 
-        // this bipredicate returns true if the ending amount is within EPSILON of $0.00.
-        // thus, our stopping condition will be abs(finalValue) <= EPSILON, or - EPSILON <= finalValue <= + EPSILON
-        BiPredicate<BigDecimal, BigDecimal> withinEpsilon = (v, e) -> v.abs().compareTo(e) <= 0;
+    /**
+     * @return the balance after the payment on the 5th of the following month
+     */
+    public BalancePair makeBiMonthlyPayments(BigDecimal payment) {
 
+        return makeBiMonthlyPayments(payment, CONSOLE);
+    }
 
-        while (true) {
+    /**
+     * Same as above, but reports each half payment to the listener instead of the console.
+     * @param listener told about each half payment, or PaymentListener.SILENT
+     */
+    public BalancePair makeBiMonthlyPayments(BigDecimal payment, PaymentListener listener) {
 
-            // need to reset the starting amounts for each new guess
-            mBalancePair.setPrincipal(startingPrincipal);
-            mBalancePair.setInterest(startingInterest);
-            int currentMonth = startingMonth;
+        long start = CalculatorMetrics.start();
+        BalancePair balance = mSimulator.biMonthlyPayments(mBalancePair, mCurrentYear, mCurrentMonth, payment,
+                listener);
+        CalculatorMetrics.time(CalculatorMetrics.Operation.BIMONTHLY_PAYMENTS, start);
 
-            guessPayment = lowPayment.add(highPayment, SIG_FIGS_AND_ROUNDING )
-                    .divide(new BigDecimal(2), SIG_FIGS_AND_ROUNDING);
+        return balance;
+    }
 
-            System.out.printf("\nTrying amount $ %.2f for %d months\n", guessPayment, monthsToPayoff);
+    /**
+     * The two half payments of makeBiMonthlyPayments as schedule rows, without printing them.
+     */
+    public Stream<ScheduleRow> biMonthlySchedule(BigDecimal payment) {
 
-            makePaymentSeries(guessPayment, monthsToPayoff);
+        return mSimulator.biMonthlySchedule(mBalancePair, mCurrentYear, mCurrentMonth, payment);
+    }
 
+    /**
+     * Writes the two half payments of makeBiMonthlyPayments to the exporter.
+     * @return the number of rows written
+     */
+    public long exportBiMonthlySchedule(BigDecimal payment, ScheduleExporter exporter) throws IOException {
 
-            if ((currentMonth + monthsToPayoff) > 12) {
-                currentMonth = (currentMonth + monthsToPayoff) % 12;
-            } else {
-                currentMonth += monthsToPayoff;
-            }
+        return exporter.writeAll(biMonthlySchedule(payment));
+    }
 
-            finalAmount = nextMonthBalance(currentMonth).getPrincipal();
+    public void compareMonthlyVsBimonthly(BigDecimal payment) {
 
-            if (withinEpsilon.test(finalAmount, EPSILON)) { // we're done, break from the loop
+        PaymentComparison comparison = compareMonthlyVsBimonthly(payment, CONSOLE);
 
-                // reset the values to what they were to begin with
-                mBalancePair.setPrincipal(startingPrincipal);
-                mBalancePair.setInterest(startingInterest);
-                mCurrentMonth = startingMonth;
+        System.out.println("After bimonthly principal: " + comparison.getAfterBimonthly());
+        System.out.println("After monthly principal: " + comparison.getAfterMonthly());
 
-                return guessPayment;
+        // compare -- show interest saved and extra principal reduction
+        System.out.printf("\nPrincipal reduction with bimonthly payments: $%.2f", comparison.getBimonthlyReduction());
+        System.out.printf("\nPrincipal reduction with monthly payments: $%.2f", comparison.getMonthlyReduction());
 
-            } else {
+        System.out.printf("\nBy splitting $%.2f in half and paying 2x a month, you saved $%.2f in interest"
+                , payment, comparison.getInterestSaved());
+    }
 
-                if (finalAmount.compareTo(EPSILON) > 0) { // final amount > EPSILON, meaning payment was too low
+    /**
+     * Works out the comparison without printing it.
+     * @param listener told about each half of the bi-monthly payment, or PaymentListener.SILENT
+     */
+    public PaymentComparison compareMonthlyVsBimonthly(BigDecimal payment, PaymentListener listener) {
 
-                    lowPayment = guessPayment;
+        long start = CalculatorMetrics.start();
+        PaymentComparison comparison = mSimulator.compareMonthlyVsBimonthly(mBalancePair, mCurrentYear,
+                mCurrentMonth, payment, listener);
+        CalculatorMetrics.time(CalculatorMetrics.Operation.COMPARE, start);
 
-                } else { // final amount < EPSILON, meaning payment was too high
+        return comparison;
+    }
 
-                    highPayment = guessPayment;
-                }
-            }
+    /**
+     * Checks a balance that came from outside, such as a script or an HTTP request, before
+     * anything is worked out on it.
+     * @throws IllegalArgumentException if the principal isn't above $0.00 or the interest is negative
+     */
+    static void checkBalance(BalancePair pair) {
 
+        if (pair.getPrincipal().signum() <= 0) {
 
+            CalculatorMetrics.invalid("principal");
+            throw new IllegalArgumentException("Principal must be more than 0");
         }
 
-    }
+        if (pair.getInterest().signum() < 0) {
 
-    public void printMinMonthlyPayment(BigDecimal minMonthlyPayment, int monthsToPayOff) {
-
-        System.out.printf("The minimum monthly payment is $ %.2f " +
-        "for the loan to be paid off in " +
-        monthsToPayOff + " months\n", minMonthlyPayment);
+            CalculatorMetrics.invalid("interest");
+            throw new IllegalArgumentException("Interest can't be negative");
+        }
     }
 
-    public void makeBiMonthlyPayments(BigDecimal payment) {
+    /**
+     * Checks a yearly rate that came from outside, so the accrual factors stay in a range the
+     * engines are built for.
+     * @throws IllegalArgumentException unless the rate is from 0 to MAX_ANNUAL_RATE
+     */
+    static void checkRate(BigDecimal annualRate) {
 
-        BigDecimal halfPayment = payment.divide(new BigDecimal(2), SIG_FIGS_AND_ROUNDING);
+        if (annualRate.signum() < 0 || annualRate.compareTo(MAX_ANNUAL_RATE) > 0) {
 
-        int currentMonth = getmCurrentMonth();
-        int days = getDaysFromMonth(currentMonth);
+            CalculatorMetrics.invalid("rate");
+            throw new IllegalArgumentException("Rate must be a decimal from 0 to " + MAX_ANNUAL_RATE.toPlainString());
+        }
+    }
 
-        if (days == 30) {
+    /**
+     * Checks a start year that came from outside.
+     * @throws IllegalArgumentException unless the year is from MIN_YEAR to MAX_YEAR
+     */
+    static void checkYear(int year) {
 
+        if (year < MIN_YEAR || year > MAX_YEAR) {
 
-            BigDecimal interestToAdd = interestAccumulated(10); // from 5th to 15th of month
+            CalculatorMetrics.invalid("year");
+            throw new IllegalArgumentException("Year must be a number from " + MIN_YEAR + " to " + MAX_YEAR);
+        }
+    }
 
-            // add the accumulated interest to the current interest
-            getBalancePair().setInterest(getBalancePair().getInterest().add(interestToAdd));
+    /**
+     * Checks a payment that came from outside.
+     * @throws IllegalArgumentException if the payment isn't above $0.00
+     */
+    static void checkPayment(BigDecimal payment) {
 
-            System.out.println("Making payment on 15th with balance " + mBalancePair);
+        if (payment.signum() <= 0) {
 
-            makePayment(halfPayment); // 1st payment, on 15th of month
-            interestToAdd = interestAccumulated(20); // from 15th to 5th, 30 day month
-            getBalancePair().setInterest(getBalancePair().getInterest().add(interestToAdd));
+            CalculatorMetrics.invalid("payment");
+            throw new IllegalArgumentException("Payment must be more than 0");
+        }
+    }
 
-            System.out.println("Making payment on 5th with balance " + mBalancePair);
+    /**
+     * Checks a number of months that came from outside, so a schedule can't run for longer
+     * than monthsToPayoff would look ahead.
+     * @throws IllegalArgumentException if months isn't from 1 to MAX_PAYOFF_MONTHS
+     */
+    static void checkMonths(int months) {
 
-            makePayment(halfPayment); // 2nd payment, on 5th of following month
+        if (months < 1 || months > MAX_PAYOFF_MONTHS) {
 
-            System.out.println("Balance after payment on 5th: " + mBalancePair);
+            CalculatorMetrics.invalid("months");
+            throw new IllegalArgumentException("Months must be a number from 1 to " + MAX_PAYOFF_MONTHS);
+        }
+    }
 
-        } else if (days == 31) {
 
-            BigDecimal interestToAdd = interestAccumulated(10); // from 5th to 15th of month
+    public static void main(String[] args) {
 
-            // add the accumulated interest to the current interest
-            getBalancePair().setInterest(getBalancePair().getInterest().add(interestToAdd));
+        // scripted runs come first, before anything slow to start like JMX is touched
 
-            System.out.println("Making payment on 15th with balance " + mBalancePair);
+        // DepressingFigures <principal> <interest> <mode> [values] [options]: one answer, no prompts
+        if (ScriptRunner.isCommand(args)) {
 
-            makePayment(halfPayment); // 1st payment, on 15th of month
-            interestToAdd = interestAccumulated(21); // from 15th to 5th, 31 day month
-            getBalancePair().setInterest(getBalancePair().getInterest().add(interestToAdd));
+            System.exit(ScriptRunner.runArgs(args, System.out));
+        }
 
-            System.out.println("Making payment on 5th with balance " + mBalancePair);
+        // DepressingFigures -: the same, for every line on standard input
+        if (args.length == 1 && args[0].equals("-")) {
 
-            makePayment(halfPayment); // 2nd payment, on 5th of following month
+            try {
 
-            System.out.println("Balance after payment on 5th: " + mBalancePair);
+                BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                // buffered and only flushed at the end, rather than on every line like System.out
+                PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)),
+                        false, "UTF-8");
 
-        } else { // 28 days -- February
+                System.exit(ScriptRunner.runLines(in, out) == 0 ? 0 : 1);
 
-            BigDecimal interestToAdd = interestAccumulated(10); // from 5th to 15th of month
+            } catch (IOException e) {
 
-            // add the accumulated interest to the current interest
-            getBalancePair().setInterest(getBalancePair().getInterest().add(interestToAdd));
+                throw new UncheckedIOException(e);
+            }
+        }
 
-            System.out.println("Making payment on 15th with balance \n" + mBalancePair);
+        // DepressingFigures warmup: runs every scripted mode once, for recording a class data sharing archive
+        if (args.length == 1 && args[0].equals("warmup")) {
 
-            makePayment(halfPayment); // 1st payment, on 15th of month
-            interestToAdd = interestAccumulated(18); // from 15th to 5th, 28 day month
-            getBalancePair().setInterest(getBalancePair().getInterest().add(interestToAdd));
+            ScriptRunner.warmUp();
+            return;
+        }
 
-            System.out.println("Making payment on 5th with balance \n" + mBalancePair);
+        CalculatorMetrics.get().registerMBean();
 
-            makePayment(halfPayment); // 2nd payment, on 5th of following month
+        String logSeconds = System.getProperty("loancalcs.metrics.logSeconds");
 
-            System.out.println("Balance after payment on 5th: " + mBalancePair);
+        if (logSeconds != null) {
 
+            CalculatorMetrics.get().startLogging(Long.parseLong(logSeconds), TimeUnit.SECONDS);
         }
 
-    }
-
-    public void compareMonthlyVsBimonthly(BigDecimal payment) {
-
-        int days = getDaysFromMonth(mCurrentMonth);
-
-        BigDecimal startingPrincipal = mBalancePair.getPrincipal();
-        BigDecimal startingInterest = mBalancePair.getInterest();
+        // batch mode: DepressingFigures batch <mode> <file with one loan per line, or a loan book>
+        // where mode is payseries, minpay, minpay-warm, minpay-warm-report, minpay-screening or
+        // minpay-verified.
+        // prints each loan's result in input order, then how long the run took
+        if (args.length == 3 && args[0].equals("batch")) {
+
+            PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)),
+                    false);
+            new PortfolioEngine().runFile(args[1], args[2]).printResults(out);
+            out.flush();
+            return;
+        }
 
-        makeBiMonthlyPayments(payment);
-        BigDecimal afterBimonthly = mBalancePair.getPrincipal();
+        // DepressingFigures serve [port]: answers every mode as JSON over HTTP until killed
+        if (args.length >= 1 && args.length <= 2 && args[0].equals("serve")) {
 
-        System.out.println("After bimonthly principal: " + afterBimonthly);
+            try {
 
-        // reset the balance before making the same payment, but in one instead of split into two
-        mBalancePair.setPrincipal(startingPrincipal);
+                QuoteServer server = new QuoteServer(args.length == 2 ? Integer.parseInt(args[1])
+                        : QuoteServer.DEFAULT_PORT);
+                Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+                server.start();
 
-        // add the interest accumulated over the whole month to the starting interest
-        BigDecimal interestToAdd = interestAccumulated(days);
-        mBalancePair.setInterest(startingInterest.add(interestToAdd, SIG_FIGS_AND_ROUNDING));
+                System.out.println("Serving quotes on http://localhost:" + server.getPort() + "/");
 
-        // apply the single monthly payment
-        makePayment(payment);
-        BigDecimal afterMonthly = mBalancePair.getPrincipal();
+            } catch (IOException e) {
 
-        System.out.println("After monthly principal: " + afterMonthly);
+                throw new UncheckedIOException(e);
+            }
 
-        // compare -- show interest saved and extra principal reduction
-        // difference in amount paid in interest is the difference between the two principals
-        BigDecimal principalDiffBimonthly = startingPrincipal
-                .subtract(afterBimonthly, SIG_FIGS_AND_ROUNDING);
+            return;
+        }
 
-        BigDecimal principalDiffMonthly = startingPrincipal
-                .subtract(afterMonthly, SIG_FIGS_AND_ROUNDING);
+        // DepressingFigures batch import <file with one loan per line> <loan book to write>
+        if (args.length == 4 && args[0].equals("batch") && args[1].equals("import")) {
 
-        System.out.printf("\nPrincipal reduction with bimonthly payments: $%.2f", principalDiffBimonthly);
-        System.out.printf("\nPrincipal reduction with monthly payments: $%.2f", principalDiffMonthly);
+            try {
 
-        BigDecimal relativeDifference = principalDiffBimonthly.subtract(principalDiffMonthly, SIG_FIGS_AND_ROUNDING);
+                System.out.println(LoanBook.importCsv(Paths.get(args[2]), Paths.get(args[3])) + " loan(s) imported");
 
-        System.out.printf("\nBy splitting $%.2f in half and paying 2x a month, you saved $%.2f in interest"
-                , payment, relativeDifference);
-    }
+            } catch (IOException e) {
 
+                throw new UncheckedIOException(e);
+            }
 
-    public static void main(String[] args) {
+            return;
+        }
 
         DepressingFigures df;
 
@@ -483,6 +747,7 @@ public class DepressingFigures {
 
                 if (!modeOptions.contains(modeStr)) {
 
+                    CalculatorMetrics.invalid("mode");
                     throw new IllegalArgumentException();
                 }
 
@@ -495,7 +760,7 @@ public class DepressingFigures {
                     case "minpay":
                         System.out.println("Enter months to pay off loan in: ");
                         int monthsToPayOff = sc.nextInt();
-                        BigDecimal minPayment = df.monthlyPaymentNeeded(monthsToPayOff);
+                        BigDecimal minPayment = df.monthlyPaymentNeeded(monthsToPayOff, CONSOLE);
                         df.printMinMonthlyPayment(minPayment, monthsToPayOff);
                         break;
 
@@ -507,7 +772,8 @@ public class DepressingFigures {
                         System.out.println("Enter number of months to make this payment: ");
                         int monthsToPay = sc.nextInt();
 
-                        df.makePaymentSeries(payment, monthsToPay);
+                        PaymentTotals totals = df.paymentSeriesTotals(payment, monthsToPay, CONSOLE);
+                        System.out.println(totals);
                         break;
 
                     case "nextbal":
@@ -0,0 +1,241 @@
+/**
+ * The same payment arithmetic as PaymentSimulator, but on doubles, for screening questions that
+ * don't need BigDecimal precision. Each rate's daily rate times each possible number of days is
+ * worked out once, so a month's accrual is a single multiply. Doubles carry about 16 significant
+ * digits, so over a loan's life the balances drift from the exact engine's by a tiny fraction of
+ * a cent; the decisions that depend on them can be checked with a margin, see Precision.
+ */
+public class DoubleSimulator {
+
+    /**
+     * What monthsToPayoff returns when the answer came too close to call.
+     */
+    public static final int UNSURE = -2;
+
+    private static final double EPSILON = DepressingFigures.EPSILON.doubleValue();
+    private static final int MAX_MONTH_DAYS = 31;
+
+    private final RateSchedule mRates;
+
+    // mAccrualFactors[segment][days] is that segment's dailyRate * days
+    private final double[][] mAccrualFactors;
+
+    /**
+     * @param rates the rate charged each month; a factor table is built for each rate in it
+     */
+    public DoubleSimulator(RateSchedule rates) {
+
+        mRates = rates;
+        mAccrualFactors = new double[rates.segmentCount()][MAX_MONTH_DAYS + 1];
+
+        for (int segment = 0; segment < mAccrualFactors.length; segment++) {
+
+            double dailyRate = rates.dailyRateOfSegment(segment).doubleValue();
+
+            for (int days = 0; days <= MAX_MONTH_DAYS; days++) {
+
+                mAccrualFactors[segment][days] = dailyRate * days;
+            }
+        }
+    }
+
+    public RateSchedule getRates() {
+
+        return mRates;
+    }
+
+    // a whole month of interest in the given month
+    private double monthlyInterest(double principal, int year, int month) {
+
+        return principal * mAccrualFactors[mRates.segmentFor(year, month)][mRates.daysInMonth(year, month)];
+    }
+
+    /**
+     * Makes the same payment every month, accruing each month's interest after the payment,
+     * and stops early once the principal is more than EPSILON below $0.00.
+     * @param startYear the year the first payment is made in
+     * @param startMonth a number 1-12 for the month the first payment is made in
+     * @param payment the amount to be applied each month
+     * @param monthsToPay the number of months to apply the payment
+     * @return the principal left after the last payment
+     */
+    public double principalAfterPayments(double principal, double interest, int startYear, int startMonth,
+                                         double payment, int monthsToPay) {
+
+        int currentYear = startYear;
+        int currentMonth = startMonth;
+
+        for (int monthsPaid = 0; monthsPaid < monthsToPay; monthsPaid++) {
+
+            if (payment <= interest) {
+
+                interest -= payment;
+
+            } else {
+
+                principal -= payment - interest;
+                interest = 0;
+            }
+
+            interest += monthlyInterest(principal, currentYear, currentMonth);
+
+            if (currentMonth == 12) {
+
+                currentMonth = 1;
+                currentYear++;
+
+            } else {
+
+                currentMonth++;
+            }
+
+            if (-principal > EPSILON) {
+
+                break;
+            }
+        }
+
+        return principal;
+    }
+
+    /**
+     * Runs the payment every month until the principal is within EPSILON of $0.00.
+     * @param payment the amount to be applied each month
+     * @param maxMonths the most months to try before giving up
+     * @param margin how close the principal can come to EPSILON, in the month it's paid off or
+     *               the month before, before the answer is too close to call; 0 to always answer
+     * @return the number of months it takes to pay off the loan, PaymentSolver.NEVER if it isn't
+     *         paid off within maxMonths, or UNSURE if the answer came within the margin
+     */
+    public int monthsToPayoff(double principal, double interest, int startYear, int startMonth, double payment,
+                              int maxMonths, double margin) {
+
+        int currentYear = startYear;
+        int currentMonth = startMonth;
+
+        for (int monthsPaid = 1; monthsPaid <= maxMonths; monthsPaid++) {
+
+            if (payment <= interest) {
+
+                interest -= payment;
+
+            } else {
+
+                principal -= payment - interest;
+                interest = 0;
+            }
+
+            // principal never goes up, so the month it's paid off in and the month before
+            // are the only ones that come close to EPSILON
+            if (principal <= EPSILON + margin) {
+
+                if (principal > EPSILON - margin) {
+
+                    return UNSURE;
+                }
+
+                if (principal <= EPSILON) {
+
+                    return monthsPaid;
+                }
+            }
+
+            interest += monthlyInterest(principal, currentYear, currentMonth);
+
+            if (currentMonth == 12) {
+
+                currentMonth = 1;
+                currentYear++;
+
+            } else {
+
+                currentMonth++;
+            }
+        }
+
+        return PaymentSolver.NEVER;
+    }
+
+    /**
+     * Finds the minimum monthly payment that pays off the balance in the given number of months,
+     * using the same bracketed secant search as PaymentSolver.
+     * @param startYear the year the first payment is made in
+     * @param startMonth a number 1-12 for the month the first payment is made in
+     * @param monthsToPayoff the number of months to fully pay off the balance
+     * @return the payment
+     */
+    public double monthlyPaymentNeeded(double principal, double interest, int startYear, int startMonth,
+                                       int monthsToPayoff) {
+
+        if (monthsToPayoff < 1) {
+
+            CalculatorMetrics.invalid("monthsToPayoff");
+            throw new IllegalArgumentException("Months to pay off must be at least 1");
+        }
+
+        double lowPayment = 0;
+        double highPayment = principal + interest;
+
+        // the starting daily rate over the day count's year, spread over an average month, for the annuity seed
+        double monthlyRate = mAccrualFactors[mRates.segmentFor(startYear, startMonth)][1]
+                * mRates.getDayCount().getDaysPerYear().doubleValue() / 12;
+        double growth = Math.pow(1 + monthlyRate, monthsToPayoff);
+        double guessPayment = monthlyRate == 0 ? highPayment / monthsToPayoff
+                : highPayment * monthlyRate * (growth / (1 + monthlyRate)) / (growth - 1);
+
+        double previousPayment = 0;
+        double previousAmount = 0;
+        boolean first = true;
+        int iterations = 0;
+
+        while (true) {
+
+            double finalAmount = principalAfterPayments(principal, interest, startYear, startMonth, guessPayment,
+                    monthsToPayoff);
+            iterations++;
+
+            if (Math.abs(finalAmount) <= EPSILON || highPayment - lowPayment <= Math.ulp(highPayment)) {
+
+                CalculatorMetrics.solverIterations(iterations);
+                return guessPayment;
+            }
+
+            if (finalAmount > 0) { // payment was too low
+
+                lowPayment = guessPayment;
+
+            } else { // payment was too high
+
+                highPayment = guessPayment;
+            }
+
+            double nextPayment;
+
+            if (first) {
+
+                // spread whatever is left over (or overpaid) evenly across the term
+                nextPayment = guessPayment + finalAmount / monthsToPayoff;
+                first = false;
+
+            } else if (finalAmount == previousAmount) {
+
+                nextPayment = (lowPayment + highPayment) / 2;
+
+            } else {
+
+                // secant step: where the line through the last two guesses crosses $0.00
+                nextPayment = guessPayment - finalAmount * (guessPayment - previousPayment)
+                        / (finalAmount - previousAmount);
+            }
+
+            if (nextPayment <= lowPayment || nextPayment >= highPayment) {
+
+                nextPayment = (lowPayment + highPayment) / 2;
+            }
+
+            previousPayment = guessPayment;
+            previousAmount = finalAmount;
+            guessPayment = nextPayment;
+        }
+    }
+}
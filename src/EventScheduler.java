@@ -0,0 +1,218 @@
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs a loan through any calendar of payment dates. Payments are events in a priority queue
+ * ordered by date. Interest accrues from one event to the next by the exact number of days
+ * between them, split wherever the rate changes, and each payment is applied to interest first
+ * and then to principal, as in every other mode. A repeating payment only has its next date in
+ * the queue, and puts the one after it back when it comes up. So the work grows with the
+ * number of payments, not the number of days, and the queue never holds more than one entry
+ * per payment series.
+ *
+ * Like the payment series, it stops once the principal is more than EPSILON below $0.00.
+ */
+public class EventScheduler {
+
+    private final PaymentSimulator mSimulator;
+
+    /**
+     * @param rates the rate charged over time
+     */
+    public EventScheduler(RateSchedule rates) {
+
+        mSimulator = new PaymentSimulator(rates);
+    }
+
+    /**
+     * @param start the balance on the given date
+     * @param asOf the date the balance is as of; interest accrues from here to the first payment
+     * @param calendar when the payments are made and how much they are
+     * @return one row per payment, worked out only as it is read, with each row's interest
+     *         accrued being what built up since the previous payment
+     */
+    public Stream<ScheduleRow> schedule(BalancePair start, LocalDate asOf, PaymentCalendar calendar) {
+
+        Events events = new Events(start, asOf, calendar);
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(events,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    /**
+     * Runs every payment in the calendar without keeping the rows.
+     * @return the balance after the last payment
+     */
+    public BalancePair run(BalancePair start, LocalDate asOf, PaymentCalendar calendar) {
+
+        long startNanos = CalculatorMetrics.start();
+        Events events = new Events(start, asOf, calendar);
+
+        while (events.hasNext()) {
+
+            events.next();
+        }
+
+        CalculatorMetrics.scheduleLength(events.mPaymentsMade);
+        CalculatorMetrics.time(CalculatorMetrics.Operation.EVENT_SCHEDULE, startNanos);
+
+        return events.mBalance;
+    }
+
+    /**
+     * The interest the principal accrues from one date to a later one, split at each rate change.
+     */
+    BigDecimal interestBetween(BigDecimal principal, LocalDate from, LocalDate to) {
+
+        RateSchedule rates = mSimulator.getRates();
+        DayCount dayCount = rates.getDayCount();
+        BigDecimal interest = BigDecimal.ZERO;
+
+        while (from.isBefore(to)) {
+
+            int changeKey = rates.nextChangeKey(from.getYear(), from.getMonthValue());
+            LocalDate until = to;
+
+            if (changeKey != Integer.MAX_VALUE) {
+
+                LocalDate change = LocalDate.of(changeKey / 12, changeKey % 12 + 1, 1);
+
+                if (change.isBefore(to)) {
+
+                    until = change;
+                }
+            }
+
+            interest = interest.add(mSimulator.interestAccumulated(principal, from.getYear(), from.getMonthValue(),
+                    dayCount.daysBetween(from, until)), DepressingFigures.SIG_FIGS_AND_ROUNDING);
+            from = until;
+        }
+
+        return interest;
+    }
+
+    /**
+     * The next payment due from one series.
+     */
+    private static final class Event implements Comparable<Event> {
+
+        final PaymentCalendar.Series series;
+        final int occurrence;
+        final LocalDate date;
+
+        // breaks ties between payments on the same day, in the order the series were added
+        final int order;
+
+        Event(PaymentCalendar.Series series, int occurrence, int order) {
+
+            this.series = series;
+            this.occurrence = occurrence;
+            this.date = series.dateOf(occurrence);
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+
+            int byDate = date.compareTo(other.date);
+
+            return byDate != 0 ? byDate : Integer.compare(order, other.order);
+        }
+    }
+
+    private final class Events implements Iterator<ScheduleRow> {
+
+        private final PriorityQueue<Event> mQueue = new PriorityQueue<>();
+        private final PaymentCalendar mCalendar;
+
+        private BalancePair mBalance;
+        private LocalDate mLastDate;
+        private int mPaymentsMade;
+        private boolean mPaidOff;
+        private Event mNext;
+
+        Events(BalancePair start, LocalDate asOf, PaymentCalendar calendar) {
+
+            mCalendar = calendar;
+            mBalance = start;
+            mLastDate = asOf;
+
+            int order = 0;
+
+            for (PaymentCalendar.Series series : calendar.getSeries()) {
+
+                Event first = new Event(series, 0, order++);
+
+                if (first.date.isBefore(asOf)) {
+
+                    CalculatorMetrics.invalid("calendar");
+                    throw new IllegalArgumentException("Payment on " + first.date + " is before " + asOf);
+                }
+
+                mQueue.add(first);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            if (mPaidOff) {
+
+                return false;
+            }
+
+            while (mNext == null && !mQueue.isEmpty()) {
+
+                Event event = mQueue.poll();
+
+                // put the series' following payment in before deciding what to do with this one
+                if (event.occurrence + 1 < event.series.count) {
+
+                    mQueue.add(new Event(event.series, event.occurrence + 1, event.order));
+                }
+
+                if (!mCalendar.isSkipped(event.date)) {
+
+                    mNext = event;
+                }
+            }
+
+            return mNext != null;
+        }
+
+        @Override
+        public ScheduleRow next() {
+
+            if (!hasNext()) {
+
+                throw new NoSuchElementException();
+            }
+
+            Event event = mNext;
+            mNext = null;
+
+            // interest since the last payment, then this payment
+            BigDecimal accrued = interestBetween(mBalance.getPrincipal(), mLastDate, event.date);
+            BalancePair before = mBalance.withInterest(mBalance.getInterest()
+                    .add(accrued, DepressingFigures.SIG_FIGS_AND_ROUNDING));
+            BalancePair after = mSimulator.makePayment(before, event.series.amount);
+
+            mBalance = after;
+            mLastDate = event.date;
+            mPaymentsMade++;
+
+            // if balance goes lower than EPSILON less than 0.00, stop making payments
+            mPaidOff = PaymentSimulator.isOverpaid(after.getPrincipal());
+
+            return PaymentSimulator.scheduleRow(mPaymentsMade, event.date.getYear(), event.date.getMonthValue(),
+                    event.date.getDayOfMonth(), event.series.amount, before, after, accrued);
+        }
+    }
+}
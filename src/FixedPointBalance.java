@@ -0,0 +1,73 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Principal and interest held as whole millionths of a cent. The fixed point simulator updates
+ * one of these in place, so a caller can reuse the same instance for every loan it runs.
+ */
+public class FixedPointBalance {
+
+    // 100 cents to the dollar, 1,000,000 units to the cent
+    public static final long UNITS_PER_DOLLAR = 100000000L;
+    private static final int SCALE = 8;
+
+    long principal;
+    long interest;
+
+    public FixedPointBalance() {
+    }
+
+    public FixedPointBalance(long principal, long interest) {
+
+        this.principal = principal;
+        this.interest = interest;
+    }
+
+    public FixedPointBalance(BalancePair pair) {
+
+        set(pair);
+    }
+
+    public long getPrincipal() {
+        return principal;
+    }
+
+    public long getInterest() {
+        return interest;
+    }
+
+    public void set(long principal, long interest) {
+
+        this.principal = principal;
+        this.interest = interest;
+    }
+
+    public void set(BalancePair pair) {
+
+        set(toUnits(pair.getPrincipal()), toUnits(pair.getInterest()));
+    }
+
+    public BalancePair toBalancePair() {
+
+        return new BalancePair(toDollars(principal), toDollars(interest));
+    }
+
+    /**
+     * @throws ArithmeticException if the amount is too large to hold in a long
+     */
+    public static long toUnits(BigDecimal dollars) {
+
+        return dollars.setScale(SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toDollars(long units) {
+
+        return BigDecimal.valueOf(units, SCALE);
+    }
+
+    @Override
+    public String toString() {
+
+        return toBalancePair().toString();
+    }
+}
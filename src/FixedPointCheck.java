@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks FixedPointSimulator against PaymentSimulator on a corpus of loans: each loan's payment
+ * series is run on both engines, and the final principal and interest must agree to the cent,
+ * that is differ by less than half a cent. The corpus is generated from a seed, 3,000 loans of
+ * up to 360 months by default, over every day count and a spread of balances, rates, start
+ * dates and payments both too small and large enough to pay the loan off early. It can be
+ * written out as a batch file, and a batch file can be checked in its place:
+ *
+ *     java FixedPointCheck
+ *     java FixedPointCheck 3000 42 corpus.csv
+ *     java FixedPointCheck corpus.csv
+ *
+ * Prints a line per loan that doesn't agree, if any, then the largest difference seen, and
+ * exits with 1 if any loan didn't agree.
+ */
+public class FixedPointCheck {
+
+    private static final int DEFAULT_LOANS = 3000;
+    private static final long DEFAULT_SEED = 3;
+    private static final int MAX_MONTHS = 360;
+    private static final BigDecimal HALF_CENT = new BigDecimal("0.005");
+
+    public static void main(String[] args) throws IOException {
+
+        List<Loan> loans;
+
+        if (args.length == 1) {
+
+            try (Stream<String> lines = Files.lines(Paths.get(args[0]))) {
+
+                loans = lines.map(String::trim)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .map(Loan::parse)
+                        .collect(Collectors.toList());
+            }
+
+        } else {
+
+            int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_LOANS;
+            long seed = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_SEED;
+
+            loans = corpus(count, seed);
+
+            if (args.length > 2) {
+
+                write(loans, args[2]);
+            }
+        }
+
+        BigDecimal largest = BigDecimal.ZERO;
+        int differentCents = 0;
+        int failures = 0;
+
+        for (int i = 0; i < loans.size(); i++) {
+
+            Loan loan = loans.get(i);
+
+            BalancePair exact = loan.newFigures()
+                    .makePaymentSeries(loan.getPayment(), loan.getMonths(), PaymentListener.SILENT);
+
+            FixedPointBalance balance = new FixedPointBalance(new BalancePair(loan.getPrincipal(), loan.getInterest()));
+            new FixedPointSimulator(loan.getAnnualRate(), loan.getDayCount()).paymentSeries(balance,
+                    loan.getStartYear(), loan.getStartMonth(), FixedPointBalance.toUnits(loan.getPayment()),
+                    loan.getMonths());
+            BalancePair fixed = balance.toBalancePair();
+
+            BigDecimal principalDiff = fixed.getPrincipal().subtract(exact.getPrincipal()).abs();
+            BigDecimal interestDiff = fixed.getInterest().subtract(exact.getInterest()).abs();
+            largest = largest.max(principalDiff).max(interestDiff);
+
+            // a difference far under a cent can still straddle a half cent, so those are only counted
+            if (!cents(fixed.getPrincipal()).equals(cents(exact.getPrincipal()))
+                    || !cents(fixed.getInterest()).equals(cents(exact.getInterest()))) {
+
+                differentCents++;
+            }
+
+            if (principalDiff.compareTo(HALF_CENT) >= 0 || interestDiff.compareTo(HALF_CENT) >= 0) {
+
+                System.out.println("MISMATCH loan " + (i + 1) + " (" + line(loan) + "): BigDecimal "
+                        + exact.getPrincipal().toPlainString() + ", " + exact.getInterest().toPlainString()
+                        + " but fixed point " + fixed.getPrincipal().toPlainString() + ", "
+                        + fixed.getInterest().toPlainString());
+                failures++;
+            }
+        }
+
+        System.out.printf("%d loan(s), %d mismatch(es), largest difference $ %s, %d rounded to a different cent%n",
+                loans.size(), failures, largest.toPlainString(), differentCents);
+
+        if (failures > 0) {
+
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return count loans drawn from the seed; the same seed always gives the same loans
+     */
+    static List<Loan> corpus(int count, long seed) {
+
+        Random random = new Random(seed);
+        List<Loan> loans = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+
+            BigDecimal principal = BigDecimal.valueOf(100000 + (long) (random.nextDouble() * 300000000), 2);
+            BigDecimal interest = BigDecimal.valueOf(random.nextInt(50000), 2);
+
+            // 1% to 12% in eighths of a point
+            BigDecimal rate = BigDecimal.valueOf(1000 + random.nextInt(89) * 125, 5).stripTrailingZeros();
+            DayCount dayCount = DayCount.values()[random.nextInt(DayCount.values().length)];
+            int months = 1 + random.nextInt(MAX_MONTHS);
+
+            // about the level payment for the term, then anywhere from 20% short to 50% over
+            double monthlyRate = rate.doubleValue() / 12;
+            double level = principal.doubleValue() * monthlyRate / (1 - Math.pow(1 + monthlyRate, -months));
+            BigDecimal payment = new BigDecimal(level * (0.8 + random.nextDouble() * 0.7))
+                    .setScale(2, RoundingMode.HALF_EVEN);
+
+            loans.add(new Loan(principal, interest, rate, dayCount, 2000 + random.nextInt(41), 1 + random.nextInt(12),
+                    payment, months));
+        }
+
+        return loans;
+    }
+
+    // the corpus as a batch file, one loan per line, so PortfolioEngine and this check can both read it
+    private static void write(List<Loan> loans, String path) throws IOException {
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8))) {
+
+            out.println("# principal,interest,rate,month,payment,months,year,dayCount");
+
+            for (Loan loan : loans) {
+
+                out.println(line(loan));
+            }
+        }
+    }
+
+    private static String line(Loan loan) {
+
+        return loan.getPrincipal().toPlainString() + ',' + loan.getInterest().toPlainString() + ','
+                + loan.getAnnualRate().toPlainString() + ',' + loan.getStartMonth() + ','
+                + loan.getPayment().toPlainString() + ',' + loan.getMonths() + ',' + loan.getStartYear() + ','
+                + loan.getDayCount();
+    }
+
+    private static BigDecimal cents(BigDecimal amount) {
+
+        return amount.setScale(2, RoundingMode.HALF_EVEN);
+    }
+}
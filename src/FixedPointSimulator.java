@@ -0,0 +1,328 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * The same payment arithmetic as PaymentSimulator, but on whole millionths of a cent held in
+ * longs instead of BigDecimals, so nothing is allocated per month. The daily rate times each
+ * possible number of days is worked out once, as a binary fraction with 62 fractional bits,
+ * which makes every month's accrual a single 64 x 64 bit multiply and a rounded shift.
+ */
+public class FixedPointSimulator {
+
+    private static final int FRACTION_BITS = 62;
+    private static final long HALF = 1L << (FRACTION_BITS - 1);
+    private static final long FRACTION_MASK = (1L << FRACTION_BITS) - 1;
+    private static final int MAX_DAYS = 366;
+    private static final BigDecimal SCALE = new BigDecimal(BigInteger.ONE.shiftLeft(FRACTION_BITS));
+
+    private static final long EPSILON = FixedPointBalance.toUnits(DepressingFigures.EPSILON);
+
+    private final RateSchedule mRates;
+
+    // mAccrualFactors[segment][days] is that segment's dailyRate * days, scaled by 2^62
+    private final long[][] mAccrualFactors;
+
+    public FixedPointSimulator() {
+
+        this(DepressingFigures.ANNUAL_RATE, DayCount.ACTUAL_365_25);
+    }
+
+    /**
+     * @param annualRate the yearly interest rate as a decimal, e.g. 0.05125 for 5.125%
+     * @param dayCount how days are counted, and how many days the yearly rate is spread over
+     */
+    public FixedPointSimulator(BigDecimal annualRate, DayCount dayCount) {
+
+        this(RateSchedule.fixed(annualRate, dayCount));
+    }
+
+    /**
+     * @param rates the rate charged each month; a factor table is built for each rate in it
+     */
+    public FixedPointSimulator(RateSchedule rates) {
+
+        mRates = rates;
+        mAccrualFactors = new long[rates.segmentCount()][MAX_DAYS + 1];
+
+        for (int segment = 0; segment < mAccrualFactors.length; segment++) {
+
+            BigDecimal dailyRate = rates.dailyRateOfSegment(segment);
+
+            for (int days = 0; days <= MAX_DAYS; days++) {
+
+                mAccrualFactors[segment][days] = scaledFactor(dailyRate, days);
+            }
+        }
+    }
+
+    // dailyRate * days, scaled by 2^62 and rounded half even, ready to pass to accrue
+    static long scaledFactor(BigDecimal dailyRate, int days) {
+
+        return dailyRate.multiply(new BigDecimal(days)).multiply(SCALE)
+                .setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+    }
+
+    public RateSchedule getRates() {
+
+        return mRates;
+    }
+
+    /**
+     *
+     * @param principal the principal interest accrues on, in millionths of a cent
+     * @param year the year the interest starts accruing in
+     * @param month a number 1-12 for the month the interest starts accruing in
+     * @param days the number of days since the last payment
+     * @return the interest that accumulates over that many days, rounded half even
+     */
+    public long interestAccumulated(long principal, int year, int month, int days) {
+
+        return accrue(principal, accrualFactor(year, month, days));
+    }
+
+    // the scaled factor for that many days of interest, for callers that reuse it across balances
+    long accrualFactor(int year, int month, int days) {
+
+        return mAccrualFactors[mRates.segmentFor(year, month)][days];
+    }
+
+    // the interest a scaled factor accrues on the principal, rounded half even
+    static long accrue(long principal, long factor) {
+
+        if (principal < 0) {
+
+            return -shiftRound(Math.negateExact(principal), factor);
+        }
+
+        return shiftRound(principal, factor);
+    }
+
+    // a whole month of interest in the given month
+    private long monthlyInterest(long principal, int year, int month) {
+
+        return interestAccumulated(principal, year, month, mRates.daysInMonth(year, month));
+    }
+
+    /**
+     * Applies a payment to interest first and anything left over to principal.
+     */
+    public void makePayment(FixedPointBalance balance, long payment) {
+
+        if (payment <= balance.interest) { // payment is less than or equal to current interest
+
+            balance.interest -= payment;
+
+        } else {
+
+            balance.principal -= payment - balance.interest;
+            balance.interest = 0;
+        }
+    }
+
+    /**
+     * Adds a month of interest to the balance without making a payment.
+     * @param monthNumber a number 1-12 that represents that month
+     *                    in the calendar year
+     */
+    public void nextMonthBalance(FixedPointBalance balance, int year, int monthNumber) {
+
+        balance.interest += monthlyInterest(balance.principal, year, monthNumber);
+    }
+
+    /**
+     * Makes the same payment every month, accruing each month's interest after the payment,
+     * and stops early once the principal is more than EPSILON below $0.00.
+     * @param balance the balance before the first payment, updated in place
+     * @param startYear the year the first payment is made in
+     * @param startMonth a number 1-12 for the month the first payment is made in
+     * @param payment the amount to be applied each month, in millionths of a cent
+     * @param monthsToPay the number of months to apply the payment
+     * @return the number of months actually paid
+     */
+    public int paymentSeries(FixedPointBalance balance, int startYear, int startMonth, long payment,
+                             int monthsToPay) {
+
+        long principal = balance.principal;
+        long interest = balance.interest;
+        int currentYear = startYear;
+        int currentMonth = startMonth;
+        int monthsPaid = 0;
+
+        while (monthsPaid < monthsToPay) {
+
+            if (payment <= interest) {
+
+                interest -= payment;
+
+            } else {
+
+                principal -= payment - interest;
+                interest = 0;
+            }
+
+            interest += monthlyInterest(principal, currentYear, currentMonth);
+
+            if (currentMonth == 12) {
+
+                currentMonth = 1;
+                currentYear++;
+
+            } else {
+
+                currentMonth++;
+            }
+
+            monthsPaid++;
+
+            if (-principal > EPSILON) {
+
+                break;
+            }
+        }
+
+        balance.set(principal, interest);
+
+        return monthsPaid;
+    }
+
+    /**
+     * Finds the minimum monthly payment that pays off the balance in the given number of months,
+     * using the same bracketed secant search as PaymentSolver. If the search closes in on a
+     * payment that still misses by more than EPSILON, the payment is solved with BigDecimals
+     * instead.
+     * @param balance the starting balance, left unchanged
+     * @param startYear the year the first payment is made in
+     * @param startMonth a number 1-12 for the month the first payment is made in
+     * @param monthsToPayoff the number of months to fully pay off the balance
+     * @return the payment, in millionths of a cent
+     */
+    public long monthlyPaymentNeeded(FixedPointBalance balance, int startYear, int startMonth, int monthsToPayoff) {
+
+        return monthlyPaymentNeeded(balance, new FixedPointBalance(), startYear, startMonth, monthsToPayoff);
+    }
+
+    /**
+     * Like monthlyPaymentNeeded, but tries each payment on a balance the caller passes in, so a
+     * caller solving many loans on one thread can reuse it and allocate nothing per loan.
+     * @param scratch overwritten with each trial payment series; must not be the balance itself
+     */
+    public long monthlyPaymentNeeded(FixedPointBalance balance, FixedPointBalance scratch, int startYear,
+                                     int startMonth, int monthsToPayoff) {
+
+        if (monthsToPayoff < 1) {
+
+            CalculatorMetrics.invalid("monthsToPayoff");
+            throw new IllegalArgumentException("Months to pay off must be at least 1");
+        }
+
+        long lowPayment = 0;
+        long highPayment = balance.principal + balance.interest;
+
+        // the starting daily rate over the day count's year, spread over an average month, for the annuity seed
+        double monthlyRate = Math.scalb((double) accrualFactor(startYear, startMonth, 1), -FRACTION_BITS)
+                * mRates.getDayCount().getDaysPerYear().doubleValue() / 12;
+        double growth = Math.pow(1 + monthlyRate, monthsToPayoff);
+        long guessPayment = monthlyRate == 0 ? highPayment / monthsToPayoff
+                : (long) (highPayment * monthlyRate * (growth / (1 + monthlyRate)) / (growth - 1));
+
+        long previousPayment = 0;
+        long previousAmount = 0;
+        boolean first = true;
+        int iterations = 0;
+
+        while (true) {
+
+            scratch.set(balance.principal, balance.interest);
+            paymentSeries(scratch, startYear, startMonth, guessPayment, monthsToPayoff);
+            long finalAmount = scratch.principal;
+            iterations++;
+
+            if (Math.abs(finalAmount) <= EPSILON) {
+
+                CalculatorMetrics.solverIterations(iterations);
+                return guessPayment;
+            }
+
+            if (highPayment - lowPayment <= 1) {
+
+                // the bracket closed on a payment that still misses by more than EPSILON, so rather
+                // than return it unchecked, solve again with BigDecimals, which throws if it can't
+                CalculatorMetrics.solverIterations(iterations);
+                return FixedPointBalance.toUnits(new DepressingFigures(balance.toBalancePair(), startYear, startMonth,
+                        mRates).monthlyPaymentNeeded(monthsToPayoff));
+            }
+
+            if (finalAmount > 0) { // payment was too low
+
+                lowPayment = guessPayment;
+
+            } else { // payment was too high
+
+                highPayment = guessPayment;
+            }
+
+            long nextPayment;
+
+            if (first) {
+
+                // spread whatever is left over (or overpaid) evenly across the term
+                nextPayment = guessPayment + finalAmount / monthsToPayoff;
+                first = false;
+
+            } else if (finalAmount == previousAmount) {
+
+                nextPayment = lowPayment + (highPayment - lowPayment) / 2;
+
+            } else {
+
+                // secant step: where the line through the last two guesses crosses $0.00
+                nextPayment = guessPayment - Math.round((double) finalAmount
+                        * (guessPayment - previousPayment) / (finalAmount - previousAmount));
+            }
+
+            if (nextPayment <= lowPayment || nextPayment >= highPayment) {
+
+                nextPayment = lowPayment + (highPayment - lowPayment) / 2;
+            }
+
+            previousPayment = guessPayment;
+            previousAmount = finalAmount;
+            guessPayment = nextPayment;
+        }
+    }
+
+    // (value * factor) >> 62, rounded half even. value and factor must both be non-negative
+    private static long shiftRound(long value, long factor) {
+
+        long high = multiplyHigh(value, factor);
+        long low = value * factor;
+
+        long result = (high << (64 - FRACTION_BITS)) | (low >>> FRACTION_BITS);
+        long remainder = low & FRACTION_MASK;
+
+        if (remainder > HALF || (remainder == HALF && (result & 1) == 1)) {
+
+            result++;
+        }
+
+        return result;
+    }
+
+    // upper 64 bits of the 128 bit product, as Math.multiplyHigh does from Java 9 on
+    private static long multiplyHigh(long x, long y) {
+
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+}
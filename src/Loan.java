@@ -0,0 +1,131 @@
+import java.math.BigDecimal;
+import java.util.Calendar;
+
+/**
+ * Everything the batch engine needs to know about one loan: its balances, its own rate,
+ * the month payments start in, and the payment and term to run.
+ */
+public class Loan {
+
+    private final BigDecimal principal;
+    private final BigDecimal interest;
+    private final BigDecimal annualRate;
+    private final DayCount dayCount;
+    private final int startYear;
+    private final int startMonth;
+    private final BigDecimal payment;
+    private final int months;
+
+    /**
+     * A loan starting this year, counting days Actual/365.25.
+     * @param annualRate the yearly interest rate as a decimal, e.g. 0.05125 for 5.125%
+     * @param startMonth a number 1-12 for the month the first payment is made in
+     * @param payment the monthly payment, or null if only the minimum payment is wanted
+     * @param months the number of months to pay for, or to pay the loan off in
+     */
+    public Loan(BigDecimal principal, BigDecimal interest, BigDecimal annualRate,
+                int startMonth, BigDecimal payment, int months) {
+
+        this(principal, interest, annualRate, DayCount.ACTUAL_365_25,
+                Calendar.getInstance().get(Calendar.YEAR), startMonth, payment, months);
+    }
+
+    /**
+     * @param annualRate the yearly interest rate as a decimal, e.g. 0.05125 for 5.125%
+     * @param dayCount how days are counted, and how many days the yearly rate is spread over
+     * @param startYear the year the first payment is made in
+     * @param startMonth a number 1-12 for the month the first payment is made in
+     * @param payment the monthly payment, or null if only the minimum payment is wanted
+     * @param months the number of months to pay for, or to pay the loan off in
+     */
+    public Loan(BigDecimal principal, BigDecimal interest, BigDecimal annualRate, DayCount dayCount,
+                int startYear, int startMonth, BigDecimal payment, int months) {
+
+        this.principal = principal;
+        this.interest = interest;
+        this.annualRate = annualRate;
+        this.dayCount = dayCount;
+        this.startYear = startYear;
+        this.startMonth = startMonth;
+        this.payment = payment;
+        this.months = months;
+    }
+
+    /**
+     * Reads a loan from a line of the batch file:
+     * principal,interest,annual rate,start month,payment,months[,start year,day count].
+     * The payment may be left empty. Without the last two fields the loan starts this year
+     * and counts days Actual/365.25.
+     * @throws NumberFormatException if any of the numbers can't be read
+     * @throws IllegalArgumentException if the line doesn't have six or eight fields
+     */
+    public static Loan parse(String line) {
+
+        String[] fields = line.split(",", -1);
+
+        if (fields.length != 6 && fields.length != 8) {
+
+            CalculatorMetrics.invalid("loanFields");
+            throw new IllegalArgumentException("Expected 6 or 8 fields but found " + fields.length + ": " + line);
+        }
+
+        String paymentStr = fields[4].trim();
+
+        try {
+
+            int startYear = fields.length == 8 ? Integer.parseInt(fields[6].trim())
+                    : Calendar.getInstance().get(Calendar.YEAR);
+            DayCount dayCount = fields.length == 8 ? DayCount.parse(fields[7].trim()) : DayCount.ACTUAL_365_25;
+
+            return new Loan(new BigDecimal(fields[0].trim()), new BigDecimal(fields[1].trim()),
+                    new BigDecimal(fields[2].trim()), dayCount, startYear, Integer.parseInt(fields[3].trim()),
+                    paymentStr.isEmpty() ? null : new BigDecimal(paymentStr), Integer.parseInt(fields[5].trim()));
+
+        } catch (NumberFormatException e) {
+
+            CalculatorMetrics.invalid("loanNumber");
+            throw e;
+        }
+    }
+
+    /**
+     * @return a calculator of its own for this loan, so loans can be worked on in parallel
+     */
+    public DepressingFigures newFigures() {
+
+        return new DepressingFigures(new BalancePair(principal, interest), startYear, startMonth,
+                annualRate, dayCount);
+    }
+
+    public BigDecimal getPrincipal() {
+        return principal;
+    }
+
+    public BigDecimal getInterest() {
+        return interest;
+    }
+
+    public BigDecimal getAnnualRate() {
+        return annualRate;
+    }
+
+    public DayCount getDayCount() {
+        return dayCount;
+    }
+
+    public int getStartYear() {
+        return startYear;
+    }
+
+    public int getStartMonth() {
+        return startMonth;
+    }
+
+    public BigDecimal getPayment() {
+        return payment;
+    }
+
+    public int getMonths() {
+        return months;
+    }
+}
@@ -0,0 +1,407 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+/**
+ * A portfolio of loans kept in a memory-mapped file instead of on the heap. Each field is a
+ * column of fixed-width values, so principal, interest, rate and payment are each one run of
+ * longs in millionths of a cent (or of a percent point, for the rate), with the term, start
+ * date and day count after them. A loan is just its position in the columns. Solved minimum
+ * payments go in a column of their own, so solving never overwrites the payment a loan came
+ * with.
+ *
+ * Everything is read and written with absolute ByteBuffer gets and puts straight on the mapped
+ * file, so streaming through the book allocates nothing and updated balances go back in place.
+ * Different loans can be read and written from different threads at once. Appending is
+ * not thread safe.
+ *
+ * Layout, little endian: a 16 byte header (magic, version, capacity, size) and then the columns
+ * in the order principal, interest, rate, payment, minimum payment, months, start year, start
+ * month, day count.
+ */
+public class LoanBook implements Closeable {
+
+    public static final String EXTENSION = ".lbk";
+
+    // the longest column has to fit in one mapping
+    public static final int MAX_CAPACITY = Integer.MAX_VALUE / Long.BYTES;
+
+    private static final int MAGIC = 0x4B424E4C; // "LNBK"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+    private static final int SIZE_OFFSET = 12;
+
+    // bytes per loan across all the columns
+    private static final int BYTES_PER_LOAN = 5 * Long.BYTES + 2 * Integer.BYTES + 2;
+
+    // stored in the payment columns for loans without one, or not solved yet
+    private static final long NO_PAYMENT = Long.MIN_VALUE;
+
+    private static final DayCount[] DAY_COUNTS = DayCount.values();
+
+    private final FileChannel mChannel;
+    private final int mCapacity;
+
+    private final MappedByteBuffer mHeader;
+    private final MappedByteBuffer mPrincipal;
+    private final MappedByteBuffer mInterest;
+    private final MappedByteBuffer mRate;
+    private final MappedByteBuffer mPayment;
+    private final MappedByteBuffer mMinimumPayment;
+    private final MappedByteBuffer mMonths;
+    private final MappedByteBuffer mStartYear;
+    private final MappedByteBuffer mStartMonth;
+    private final MappedByteBuffer mDayCount;
+
+    private int mSize;
+
+    private LoanBook(FileChannel channel, int capacity, int size) throws IOException {
+
+        mChannel = channel;
+        mCapacity = capacity;
+        mSize = size;
+
+        mHeader = map(channel, 0, HEADER_BYTES);
+
+        // one mapping per column, so a book isn't limited to the 2GB a single mapping can cover
+        long offset = HEADER_BYTES;
+
+        mPrincipal = map(channel, offset, (long) capacity * Long.BYTES);
+        offset += (long) capacity * Long.BYTES;
+        mInterest = map(channel, offset, (long) capacity * Long.BYTES);
+        offset += (long) capacity * Long.BYTES;
+        mRate = map(channel, offset, (long) capacity * Long.BYTES);
+        offset += (long) capacity * Long.BYTES;
+        mPayment = map(channel, offset, (long) capacity * Long.BYTES);
+        offset += (long) capacity * Long.BYTES;
+        mMinimumPayment = map(channel, offset, (long) capacity * Long.BYTES);
+        offset += (long) capacity * Long.BYTES;
+        mMonths = map(channel, offset, (long) capacity * Integer.BYTES);
+        offset += (long) capacity * Integer.BYTES;
+        mStartYear = map(channel, offset, (long) capacity * Integer.BYTES);
+        offset += (long) capacity * Integer.BYTES;
+        mStartMonth = map(channel, offset, capacity);
+        offset += capacity;
+        mDayCount = map(channel, offset, capacity);
+    }
+
+    /**
+     * Creates an empty book, replacing any file already at the path.
+     * @param capacity the most loans the book can hold, up to MAX_CAPACITY
+     */
+    public static LoanBook create(Path path, int capacity) throws IOException {
+
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+
+            throw new IllegalArgumentException("Loan book must hold from 1 to " + MAX_CAPACITY + " loans");
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+
+            LoanBook book = new LoanBook(channel, capacity, 0);
+
+            book.mHeader.putInt(0, MAGIC);
+            book.mHeader.putInt(4, VERSION);
+            book.mHeader.putInt(8, capacity);
+            book.mHeader.putInt(SIZE_OFFSET, 0);
+
+            return book;
+
+        } catch (IOException | RuntimeException e) {
+
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing book for reading and writing.
+     * @throws IOException if the file isn't a loan book
+     */
+    public static LoanBook open(Path path) throws IOException {
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+
+            if (channel.size() < HEADER_BYTES) {
+
+                throw new IOException("Not a loan book: " + path);
+            }
+
+            ByteBuffer header = map(channel, 0, HEADER_BYTES);
+
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+
+                throw new IOException("Not a loan book, or a different version of one: " + path);
+            }
+
+            int capacity = header.getInt(8);
+            int size = header.getInt(SIZE_OFFSET);
+
+            if (capacity < 1 || capacity > MAX_CAPACITY || size < 0 || size > capacity
+                    || channel.size() < HEADER_BYTES + (long) capacity * BYTES_PER_LOAN) {
+
+                throw new IOException("Loan book is damaged: " + path);
+            }
+
+            return new LoanBook(channel, capacity, size);
+
+        } catch (IOException | RuntimeException e) {
+
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads one loan per line of a batch file into a new book, in the same format
+     * PortfolioEngine.runFile reads.
+     * @return the number of loans written
+     */
+    public static int importCsv(Path csv, Path book) throws IOException {
+
+        long count;
+
+        try (Stream<String> lines = Files.lines(csv)) {
+
+            count = lines.map(String::trim).filter(line -> !line.isEmpty() && !line.startsWith("#")).count();
+        }
+
+        if (count > MAX_CAPACITY) {
+
+            throw new IllegalArgumentException("Too many loans for one book: " + count);
+        }
+
+        try (LoanBook out = create(book, (int) Math.max(1, count));
+             Stream<String> lines = Files.lines(csv)) {
+
+            lines.map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .forEach(line -> out.append(Loan.parse(line)));
+
+            return out.size();
+        }
+    }
+
+    /**
+     * Adds a loan after the last one.
+     * @return the loan's index in the book
+     * @throws IllegalStateException if the book is full
+     */
+    public int append(Loan loan) {
+
+        if (mSize == mCapacity) {
+
+            throw new IllegalStateException("Loan book is full at " + mCapacity + " loans");
+        }
+
+        LoanCalendar.checkMonth(loan.getStartMonth());
+
+        int index = mSize;
+
+        mPrincipal.putLong(index * Long.BYTES, FixedPointBalance.toUnits(loan.getPrincipal()));
+        mInterest.putLong(index * Long.BYTES, FixedPointBalance.toUnits(loan.getInterest()));
+        mRate.putLong(index * Long.BYTES, FixedPointBalance.toUnits(loan.getAnnualRate()));
+        mPayment.putLong(index * Long.BYTES,
+                loan.getPayment() == null ? NO_PAYMENT : FixedPointBalance.toUnits(loan.getPayment()));
+        mMinimumPayment.putLong(index * Long.BYTES, NO_PAYMENT);
+        mMonths.putInt(index * Integer.BYTES, loan.getMonths());
+        mStartYear.putInt(index * Integer.BYTES, loan.getStartYear());
+        mStartMonth.put(index, (byte) loan.getStartMonth());
+        mDayCount.put(index, (byte) loan.getDayCount().ordinal());
+
+        // only count the loan once all of its fields are in
+        mSize = index + 1;
+        mHeader.putInt(SIZE_OFFSET, mSize);
+
+        return index;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int capacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Copies a loan's balance into a reusable fixed point balance.
+     */
+    public void readBalance(int index, FixedPointBalance balance) {
+
+        checkIndex(index);
+        balance.set(mPrincipal.getLong(index * Long.BYTES), mInterest.getLong(index * Long.BYTES));
+    }
+
+    /**
+     * Writes a loan's balance back to the book in place.
+     */
+    public void writeBalance(int index, FixedPointBalance balance) {
+
+        checkIndex(index);
+        mPrincipal.putLong(index * Long.BYTES, balance.principal);
+        mInterest.putLong(index * Long.BYTES, balance.interest);
+    }
+
+    /**
+     * @return the yearly rate as a decimal, in millionths of a percent point
+     */
+    public long getAnnualRateUnits(int index) {
+
+        checkIndex(index);
+        return mRate.getLong(index * Long.BYTES);
+    }
+
+    public BigDecimal getAnnualRate(int index) {
+
+        return FixedPointBalance.toDollars(getAnnualRateUnits(index));
+    }
+
+    /**
+     * @return the monthly payment in millionths of a cent
+     * @throws IllegalStateException if the loan doesn't have a payment
+     */
+    public long getPaymentUnits(int index) {
+
+        if (!hasPayment(index)) {
+
+            CalculatorMetrics.invalid("payment");
+            throw new IllegalStateException("No payment given for loan " + index);
+        }
+
+        return mPayment.getLong(index * Long.BYTES);
+    }
+
+    public boolean hasPayment(int index) {
+
+        checkIndex(index);
+        return mPayment.getLong(index * Long.BYTES) != NO_PAYMENT;
+    }
+
+    /**
+     * @return the solved minimum payment in millionths of a cent
+     * @throws IllegalStateException if the loan's minimum payment hasn't been solved
+     */
+    public long getMinimumPaymentUnits(int index) {
+
+        if (!hasMinimumPayment(index)) {
+
+            throw new IllegalStateException("No minimum payment solved for loan " + index);
+        }
+
+        return mMinimumPayment.getLong(index * Long.BYTES);
+    }
+
+    public boolean hasMinimumPayment(int index) {
+
+        checkIndex(index);
+        return mMinimumPayment.getLong(index * Long.BYTES) != NO_PAYMENT;
+    }
+
+    /**
+     * Stores the loan's solved minimum payment in place, leaving its own payment alone.
+     * @param payment the payment in millionths of a cent
+     */
+    public void setMinimumPaymentUnits(int index, long payment) {
+
+        checkIndex(index);
+        mMinimumPayment.putLong(index * Long.BYTES, payment);
+    }
+
+    public int getMonths(int index) {
+
+        checkIndex(index);
+        return mMonths.getInt(index * Integer.BYTES);
+    }
+
+    public int getStartYear(int index) {
+
+        checkIndex(index);
+        return mStartYear.getInt(index * Integer.BYTES);
+    }
+
+    public int getStartMonth(int index) {
+
+        checkIndex(index);
+        return mStartMonth.get(index);
+    }
+
+    public DayCount getDayCount(int index) {
+
+        checkIndex(index);
+        return DAY_COUNTS[mDayCount.get(index)];
+    }
+
+    /**
+     * Copies a loan out of the book onto the heap, for the BigDecimal calculator.
+     */
+    public Loan getLoan(int index) {
+
+        checkIndex(index);
+
+        return new Loan(FixedPointBalance.toDollars(mPrincipal.getLong(index * Long.BYTES)),
+                FixedPointBalance.toDollars(mInterest.getLong(index * Long.BYTES)), getAnnualRate(index),
+                getDayCount(index), getStartYear(index), getStartMonth(index),
+                hasPayment(index) ? FixedPointBalance.toDollars(getPaymentUnits(index)) : null, getMonths(index));
+    }
+
+    /**
+     * Makes sure everything written so far is on disk.
+     */
+    public void force() {
+
+        mHeader.force();
+
+        for (MappedByteBuffer column : new MappedByteBuffer[]{mPrincipal, mInterest, mRate, mPayment,
+                mMinimumPayment, mMonths, mStartYear, mStartMonth, mDayCount}) {
+
+            column.force();
+        }
+    }
+
+    /**
+     * Flushes the book to disk and closes the file. The mappings themselves are let go of by
+     * the garbage collector, so don't use the book after closing it.
+     */
+    @Override
+    public void close() throws IOException {
+
+        try {
+
+            force();
+
+        } finally {
+
+            mChannel.close();
+        }
+    }
+
+    private void checkIndex(int index) {
+
+        if (index < 0 || index >= mSize) {
+
+            throw new IndexOutOfBoundsException("Loan " + index + " isn't in a book of " + mSize);
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long offset, long bytes) throws IOException {
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        return buffer;
+    }
+}
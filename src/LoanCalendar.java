@@ -0,0 +1,67 @@
+/**
+ * Month and year lengths for the Gregorian calendar. Everything comes from a fixed table and
+ * a leap year check, so nothing is allocated however often it is called.
+ */
+public final class LoanCalendar {
+
+    // January through December in a common year
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private LoanCalendar() {
+    }
+
+    public static boolean isLeapYear(int year) {
+
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    /**
+     *
+     * @param month a number 1-12 that represents that month
+     *                    in the calendar year
+     * @return the number of days in that month, counting February 29th in leap years
+     */
+    public static int daysInMonth(int year, int month) {
+
+        checkMonth(month);
+
+        if (month == 2 && isLeapYear(year)) {
+
+            return 29;
+        }
+
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+    public static int daysInYear(int year) {
+
+        return isLeapYear(year) ? 366 : 365;
+    }
+
+    /**
+     * @param month a number 1-12
+     * @return the number of the month after it, 1 after December
+     */
+    public static int monthAfter(int month) {
+
+        return month == 12 ? 1 : month + 1;
+    }
+
+    /**
+     * @param month a number 1-12
+     * @return the year the month after it falls in
+     */
+    public static int yearOfMonthAfter(int year, int month) {
+
+        return month == 12 ? year + 1 : year;
+    }
+
+    public static void checkMonth(int month) {
+
+        if (month < 1 || month > 12) {
+
+            CalculatorMetrics.invalid("month");
+            throw new IllegalArgumentException("Not a valid month. Must be a number from 1 to 12");
+        }
+    }
+}
@@ -0,0 +1,79 @@
+import java.math.BigDecimal;
+
+/**
+ * A loan partway through a payment series: the balance after some number of monthly payments
+ * and their interest, and the year and month the next payment falls in. States never change,
+ * so one can be kept as a checkpoint and shared between schedules that agree up to that point.
+ */
+public final class LoanState {
+
+    private final int monthsPaid;
+    private final int year;
+    private final int month;
+    private final BalancePair balance;
+    private final boolean paidOff;
+
+    /**
+     * @param year the year the next payment is made in
+     * @param month a number 1-12 for the month the next payment is made in
+     */
+    public LoanState(int monthsPaid, int year, int month, BalancePair balance, boolean paidOff) {
+
+        this.monthsPaid = monthsPaid;
+        this.year = year;
+        this.month = month;
+        this.balance = balance;
+        this.paidOff = paidOff;
+    }
+
+    /**
+     * A loan before its first payment.
+     */
+    public static LoanState start(BalancePair balance, int year, int month) {
+
+        return new LoanState(0, year, month, balance, false);
+    }
+
+    /**
+     * Makes one month's payment and accrues that month's interest with PaymentSimulator.step,
+     * exactly as a month of paymentSeries does.
+     * @return the state a month later
+     */
+    public LoanState pay(PaymentSimulator simulator, BigDecimal payment) {
+
+        BalancePair next = simulator.step(monthsPaid + 1, balance, payment, year, month).getBalance();
+
+        return new LoanState(monthsPaid + 1, LoanCalendar.yearOfMonthAfter(year, month),
+                LoanCalendar.monthAfter(month), next, PaymentSimulator.isOverpaid(next.getPrincipal()));
+    }
+
+    public int getMonthsPaid() {
+        return monthsPaid;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getMonth() {
+        return month;
+    }
+
+    public BalancePair getBalance() {
+        return balance;
+    }
+
+    /**
+     * @return true once the principal has gone more than EPSILON below $0.00, after which
+     *         no more payments are made
+     */
+    public boolean isPaidOff() {
+        return paidOff;
+    }
+
+    @Override
+    public String toString() {
+
+        return "Balance in " + monthsPaid + " month(s): \n" + balance;
+    }
+}
@@ -0,0 +1,92 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * What a Monte Carlo run found over all of its paths: how many months each path took to pay the
+ * loan off, and how much interest each one paid, kept as histograms rather than path by path.
+ * Interest is counted in whole cents. Paths that never paid the loan off within the months
+ * simulated aren't in the payoff month histogram, but the interest they paid is in the other.
+ */
+public class MonteCarloResult {
+
+    private final long paths;
+    private final long seed;
+    private final long neverPaidOff;
+    private final StreamingHistogram payoffMonths;
+    private final StreamingHistogram interestPaidCents;
+    private final long elapsedNanos;
+
+    public MonteCarloResult(long paths, long seed, long neverPaidOff, StreamingHistogram payoffMonths,
+                            StreamingHistogram interestPaidCents, long elapsedNanos) {
+
+        this.paths = paths;
+        this.seed = seed;
+        this.neverPaidOff = neverPaidOff;
+        this.payoffMonths = payoffMonths;
+        this.interestPaidCents = interestPaidCents;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getPaths() {
+        return paths;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the number of paths that hadn't paid the loan off by the last month simulated
+     */
+    public long getNeverPaidOff() {
+        return neverPaidOff;
+    }
+
+    public StreamingHistogram getPayoffMonths() {
+        return payoffMonths;
+    }
+
+    public StreamingHistogram getInterestPaidCents() {
+        return interestPaidCents;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @param percentile a number 0-100
+     * @return the month that percentile of the paths that paid the loan off had paid it off by
+     */
+    public int getPayoffMonth(double percentile) {
+
+        return (int) payoffMonths.valueAtPercentile(percentile);
+    }
+
+    /**
+     * @param percentile a number 0-100
+     * @return the total interest that percentile of the paths paid at most
+     */
+    public BigDecimal getInterestPaid(double percentile) {
+
+        return BigDecimal.valueOf(interestPaidCents.valueAtPercentile(percentile), 2);
+    }
+
+    public BigDecimal getMeanInterestPaid() {
+
+        return new BigDecimal(interestPaidCents.getMean() / 100, DepressingFigures.SIG_FIGS_AND_ROUNDING)
+                .setScale(2, RoundingMode.HALF_EVEN);
+    }
+
+    @Override
+    public String toString() {
+
+        return String.format("%d path(s) from seed %d in %.3f s, %d never paid off%n" +
+                        "Payoff month:  p5 %d, p50 %d, p95 %d, p99 %d%n" +
+                        "Interest paid: p5 $ %s, p50 $ %s, p95 $ %s, p99 $ %s, mean $ %s",
+                paths, seed, elapsedNanos / 1e9, neverPaidOff,
+                getPayoffMonth(5), getPayoffMonth(50), getPayoffMonth(95), getPayoffMonth(99),
+                getInterestPaid(5), getInterestPaid(50), getInterestPaid(95), getInterestPaid(99),
+                getMeanInterestPaid());
+    }
+}
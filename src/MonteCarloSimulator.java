@@ -0,0 +1,393 @@
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Runs the same monthly payment against many random futures to see how long paying off a loan
+ * could take and how much interest it could cost. On each path the rate can move at every reset,
+ * by a normally distributed amount rounded to whole steps and kept between a floor and a cap,
+ * and each month's payment can randomly be missed or made with an extra amount on top.
+ *
+ * Paths run on the fixed point engine, with a factor table built up front for every rate a path
+ * can reach. They are split into blocks of BLOCK_PATHS, and each block draws from its own
+ * SplittableRandom, split off the seed in block order before any work starts, so the same seed
+ * gives the same result on any number of threads. Results are only kept as histograms, which
+ * merge the same way whichever order the blocks finish in.
+ *
+ * Instances never change once built: the with methods return a new simulator.
+ */
+public class MonteCarloSimulator {
+
+    /**
+     * The number of paths that draw from one random stream, one after another.
+     */
+    public static final int BLOCK_PATHS = 4096;
+
+    private static final long EPSILON = FixedPointBalance.toUnits(DepressingFigures.EPSILON);
+    private static final long UNITS_PER_CENT = FixedPointBalance.UNITS_PER_DOLLAR / 100;
+    private static final int MAX_MONTH_DAYS = 31;
+
+    private final long mPrincipal;
+    private final long mInterest;
+    private final int mStartYear;
+    private final int mStartMonth;
+    private final long mPayment;
+    private final BigDecimal mAnnualRate;
+    private final DayCount mDayCount;
+
+    // the rate path: moves every mResetMonths months (0 for never) by a normal amount with
+    // standard deviation mVolatility, in whole mRateStep steps between mRateFloor and mRateCap
+    private int mResetMonths;
+    private BigDecimal mVolatility = BigDecimal.ZERO;
+    private BigDecimal mRateStep = new BigDecimal("0.00125");
+    private BigDecimal mRateFloor;
+    private BigDecimal mRateCap;
+
+    // the payment path: each month is missed, or has mExtraPayment added, with these chances
+    private double mMissedChance;
+    private double mExtraChance;
+    private long mExtraPayment;
+
+    /**
+     * A simulator where nothing is random yet: every path pays the same payment every month at
+     * the rate the loan is charged in its first month.
+     * @param payment the amount to be applied each month
+     */
+    public MonteCarloSimulator(DepressingFigures figures, BigDecimal payment) {
+
+        RateSchedule rates = figures.getSimulator().getRates();
+        FixedPointBalance start = new FixedPointBalance(figures.getBalancePair());
+
+        mPrincipal = start.getPrincipal();
+        mInterest = start.getInterest();
+        mStartYear = figures.getmCurrentYear();
+        mStartMonth = figures.getmCurrentMonth();
+        mPayment = FixedPointBalance.toUnits(payment);
+        mAnnualRate = rates.annualRateOn(mStartYear, mStartMonth);
+        mDayCount = rates.getDayCount();
+        mRateFloor = mAnnualRate;
+        mRateCap = mAnnualRate;
+    }
+
+    private MonteCarloSimulator(MonteCarloSimulator other) {
+
+        mPrincipal = other.mPrincipal;
+        mInterest = other.mInterest;
+        mStartYear = other.mStartYear;
+        mStartMonth = other.mStartMonth;
+        mPayment = other.mPayment;
+        mAnnualRate = other.mAnnualRate;
+        mDayCount = other.mDayCount;
+        mResetMonths = other.mResetMonths;
+        mVolatility = other.mVolatility;
+        mRateStep = other.mRateStep;
+        mRateFloor = other.mRateFloor;
+        mRateCap = other.mRateCap;
+        mMissedChance = other.mMissedChance;
+        mExtraChance = other.mExtraChance;
+        mExtraPayment = other.mExtraPayment;
+    }
+
+    /**
+     * @param resetMonths how many months apart the rate can move, e.g. 12 for a yearly reset
+     * @param volatility the standard deviation of each move, as a decimal yearly rate
+     * @param step what each move is rounded to, e.g. 0.00125 for an eighth of a point
+     * @param floor the lowest the rate can go
+     * @param cap the highest the rate can go
+     * @return a simulator whose rate moves like this
+     */
+    public MonteCarloSimulator withRateShocks(int resetMonths, BigDecimal volatility, BigDecimal step,
+                                              BigDecimal floor, BigDecimal cap) {
+
+        if (resetMonths < 1) {
+
+            CalculatorMetrics.invalid("resetMonths");
+            throw new IllegalArgumentException("Reset months must be at least 1");
+        }
+
+        if (volatility.signum() < 0 || step.signum() <= 0) {
+
+            CalculatorMetrics.invalid("rateShock");
+            throw new IllegalArgumentException("Volatility can't be negative and the step must be more than 0");
+        }
+
+        if (floor.signum() < 0 || floor.compareTo(mAnnualRate) > 0 || cap.compareTo(mAnnualRate) < 0) {
+
+            CalculatorMetrics.invalid("rateBounds");
+            throw new IllegalArgumentException("Floor and cap must be either side of the starting rate "
+                    + mAnnualRate.toPlainString() + ", and the floor can't be negative");
+        }
+
+        MonteCarloSimulator shocked = new MonteCarloSimulator(this);
+        shocked.mResetMonths = resetMonths;
+        shocked.mVolatility = volatility;
+        shocked.mRateStep = step;
+        shocked.mRateFloor = floor;
+        shocked.mRateCap = cap;
+
+        return shocked;
+    }
+
+    /**
+     * @param chance the chance, 0-1, that any month's payment isn't made at all
+     * @return a simulator that misses payments like this
+     */
+    public MonteCarloSimulator withMissedPayments(double chance) {
+
+        checkChance(chance, mExtraChance);
+
+        MonteCarloSimulator missing = new MonteCarloSimulator(this);
+        missing.mMissedChance = chance;
+
+        return missing;
+    }
+
+    /**
+     * @param chance the chance, 0-1, that any month's payment has the extra added to it
+     * @param extra the amount paid on top of the payment in those months
+     * @return a simulator that makes extra payments like this
+     */
+    public MonteCarloSimulator withExtraPayments(double chance, BigDecimal extra) {
+
+        checkChance(chance, mMissedChance);
+
+        if (extra.signum() < 0) {
+
+            CalculatorMetrics.invalid("extraPayment");
+            throw new IllegalArgumentException("Extra payment can't be negative");
+        }
+
+        MonteCarloSimulator extraPaying = new MonteCarloSimulator(this);
+        extraPaying.mExtraChance = chance;
+        extraPaying.mExtraPayment = FixedPointBalance.toUnits(extra);
+
+        return extraPaying;
+    }
+
+    /**
+     * Runs the paths on the common fork-join pool.
+     * @see #run(long, long, int, ForkJoinPool)
+     */
+    public MonteCarloResult run(long paths, long seed, int maxMonths) {
+
+        return run(paths, seed, maxMonths, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param paths how many random futures to run
+     * @param seed where the random numbers start; the same seed always gives the same result
+     * @param maxMonths the most months to run each path for before counting it as never paid off
+     * @param pool the pool the blocks of paths are split across
+     * @return the distribution of payoff months and total interest paid over every path
+     */
+    public MonteCarloResult run(long paths, long seed, int maxMonths, ForkJoinPool pool) {
+
+        if (paths < 1 || (paths + BLOCK_PATHS - 1) / BLOCK_PATHS > Integer.MAX_VALUE) {
+
+            CalculatorMetrics.invalid("paths");
+            throw new IllegalArgumentException("Paths must be between 1 and " + (long) Integer.MAX_VALUE * BLOCK_PATHS);
+        }
+
+        if (maxMonths < 1) {
+
+            CalculatorMetrics.invalid("monthsToPayoff");
+            throw new IllegalArgumentException("Months must be at least 1");
+        }
+
+        long start = System.nanoTime();
+
+        // every rate a path can reach is a whole number of steps from the starting rate
+        int stepsDown = mRateFloor.subtract(mAnnualRate).divideToIntegralValue(mRateStep).negate().intValueExact();
+        int stepsUp = mRateCap.subtract(mAnnualRate).divideToIntegralValue(mRateStep).intValueExact();
+        long[][] factors = new long[stepsDown + stepsUp + 1][MAX_MONTH_DAYS + 1];
+
+        for (int i = 0; i < factors.length; i++) {
+
+            BigDecimal dailyRate = mDayCount.dailyRate(mAnnualRate.add(mRateStep.multiply(new BigDecimal(i - stepsDown))));
+
+            for (int days = 0; days <= MAX_MONTH_DAYS; days++) {
+
+                factors[i][days] = FixedPointSimulator.scaledFactor(dailyRate, days);
+            }
+        }
+
+        // the calendar is the same on every path
+        int[] days = new int[maxMonths];
+        int year = mStartYear;
+        int month = mStartMonth;
+
+        for (int i = 0; i < maxMonths; i++) {
+
+            days[i] = mDayCount.daysInMonth(year, month);
+
+            if (month == 12) {
+
+                month = 1;
+                year++;
+
+            } else {
+
+                month++;
+            }
+        }
+
+        int blocks = (int) ((paths + BLOCK_PATHS - 1) / BLOCK_PATHS);
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] streams = new SplittableRandom[blocks];
+
+        // split in block order up front, so which thread runs a block can't change its numbers
+        for (int i = 0; i < blocks; i++) {
+
+            streams[i] = root.split();
+        }
+
+        double volatilitySteps = mVolatility.divide(mRateStep, DepressingFigures.SIG_FIGS_AND_ROUNDING).doubleValue();
+
+        Tally tally = inPool(pool, () -> IntStream.range(0, blocks).parallel().collect(Tally::new,
+                (blockTally, block) -> {
+
+                    long first = (long) block * BLOCK_PATHS;
+                    int count = (int) Math.min(BLOCK_PATHS, paths - first);
+
+                    for (int i = 0; i < count; i++) {
+
+                        runPath(streams[block], factors, stepsDown, volatilitySteps, days, blockTally);
+                    }
+                },
+                Tally::merge));
+
+        CalculatorMetrics.time(CalculatorMetrics.Operation.MONTE_CARLO, start);
+
+        return new MonteCarloResult(paths, seed, tally.neverPaidOff, tally.payoffMonths, tally.interestPaidCents,
+                System.nanoTime() - start);
+    }
+
+    private void runPath(SplittableRandom random, long[][] factors, int startRate, double volatilitySteps,
+                         int[] days, Tally tally) {
+
+        long principal = mPrincipal;
+        long interest = mInterest;
+        long interestPaid = 0;
+        int rate = startRate;
+        boolean randomPayments = mMissedChance > 0 || mExtraChance > 0;
+
+        for (int monthsPaid = 0; monthsPaid < days.length; monthsPaid++) {
+
+            if (mResetMonths > 0 && monthsPaid > 0 && monthsPaid % mResetMonths == 0) {
+
+                rate += (int) Math.round(gaussian(random) * volatilitySteps);
+                rate = Math.max(0, Math.min(factors.length - 1, rate));
+            }
+
+            long payment = mPayment;
+
+            if (randomPayments) {
+
+                double draw = random.nextDouble();
+
+                if (draw < mMissedChance) {
+
+                    payment = 0;
+
+                } else if (draw < mMissedChance + mExtraChance) {
+
+                    payment += mExtraPayment;
+                }
+            }
+
+            // apply payment to interest first
+            if (payment <= interest) {
+
+                interest -= payment;
+                interestPaid += payment;
+
+            } else {
+
+                principal -= payment - interest;
+                interestPaid += interest;
+                interest = 0;
+            }
+
+            if (principal <= EPSILON) {
+
+                tally.payoffMonths.record(monthsPaid + 1);
+                tally.interestPaidCents.record(toCents(interestPaid));
+                return;
+            }
+
+            interest += FixedPointSimulator.accrue(principal, factors[rate][days[monthsPaid]]);
+        }
+
+        tally.neverPaidOff++;
+        tally.interestPaidCents.record(toCents(interestPaid));
+    }
+
+    // a standard normal draw, by the Box-Muller transform
+    private static double gaussian(SplittableRandom random) {
+
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    // whole cents, rounded half even. interest paid is never negative
+    private static long toCents(long units) {
+
+        long cents = units / UNITS_PER_CENT;
+        long remainder = units % UNITS_PER_CENT * 2;
+
+        if (remainder > UNITS_PER_CENT || (remainder == UNITS_PER_CENT && (cents & 1) == 1)) {
+
+            cents++;
+        }
+
+        return cents;
+    }
+
+    private static void checkChance(double chance, double otherChance) {
+
+        if (chance < 0 || chance > 1 || chance + otherChance > 1) {
+
+            CalculatorMetrics.invalid("chance");
+            throw new IllegalArgumentException("Chances must be between 0 and 1, and add up to no more than 1");
+        }
+    }
+
+    private static <T> T inPool(ForkJoinPool pool, Callable<T> task) {
+
+        try {
+
+            return pool.submit(task).get();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Monte Carlo run was interrupted", e);
+
+        } catch (ExecutionException e) {
+
+            if (e.getCause() instanceof RuntimeException) {
+
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // what one worker has seen so far
+    private static final class Tally {
+
+        final StreamingHistogram payoffMonths = new StreamingHistogram();
+        final StreamingHistogram interestPaidCents = new StreamingHistogram();
+        long neverPaidOff;
+
+        void merge(Tally other) {
+
+            payoffMonths.merge(other.payoffMonths);
+            interestPaidCents.merge(other.interestPaidCents);
+            neverPaidOff += other.neverPaidOff;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The dates payments are made on and how much each one is, for the event scheduler. Payments
+ * can be one-offs or repeat every so many days or months, any number of them can overlap,
+ * and any date can be skipped. A repeating payment is kept as a rule rather than a list of
+ * dates, so a decade of daily payments costs no more to hold than a single one.
+ *
+ *     new PaymentCalendar()
+ *             .biweekly(LocalDate.of(2026, 1, 9), 260, new BigDecimal("700.00"))
+ *             .once(LocalDate.of(2026, 12, 24), new BigDecimal("5000.00"))
+ *             .skip(LocalDate.of(2026, 7, 3));
+ */
+public class PaymentCalendar {
+
+    private final List<Series> mSeries = new ArrayList<>();
+    private final Set<LocalDate> mSkipped = new HashSet<>();
+
+    /**
+     * A single payment.
+     */
+    public PaymentCalendar once(LocalDate date, BigDecimal amount) {
+
+        return add(new Series(date, amount, 0, 0, 1));
+    }
+
+    /**
+     * @param first the date of the first payment
+     * @param days the number of days from one payment to the next
+     * @param count how many payments to make, counting any that are skipped
+     */
+    public PaymentCalendar everyDays(LocalDate first, int days, int count, BigDecimal amount) {
+
+        checkPositive(days, "Days between payments");
+
+        return add(new Series(first, amount, days, 0, count));
+    }
+
+    public PaymentCalendar daily(LocalDate first, int count, BigDecimal amount) {
+
+        return everyDays(first, 1, count, amount);
+    }
+
+    public PaymentCalendar weekly(LocalDate first, int count, BigDecimal amount) {
+
+        return everyDays(first, 7, count, amount);
+    }
+
+    public PaymentCalendar biweekly(LocalDate first, int count, BigDecimal amount) {
+
+        return everyDays(first, 14, count, amount);
+    }
+
+    /**
+     * Payments on the same day of every month as the first one, or the last day of the month
+     * in months too short for it.
+     * @param count how many payments to make, counting any that are skipped
+     */
+    public PaymentCalendar monthly(LocalDate first, int count, BigDecimal amount) {
+
+        return add(new Series(first, amount, 0, 1, count));
+    }
+
+    /**
+     * No payment is made on this date, whichever series it would have come from.
+     */
+    public PaymentCalendar skip(LocalDate date) {
+
+        mSkipped.add(date);
+
+        return this;
+    }
+
+    List<Series> getSeries() {
+
+        return Collections.unmodifiableList(mSeries);
+    }
+
+    boolean isSkipped(LocalDate date) {
+
+        return mSkipped.contains(date);
+    }
+
+    private PaymentCalendar add(Series series) {
+
+        checkPositive(series.count, "Number of payments");
+
+        if (series.amount.signum() < 0) {
+
+            CalculatorMetrics.invalid("payment");
+            throw new IllegalArgumentException("Payments can't be negative");
+        }
+
+        mSeries.add(series);
+
+        return this;
+    }
+
+    private static void checkPositive(int value, String what) {
+
+        if (value < 1) {
+
+            CalculatorMetrics.invalid("calendar");
+            throw new IllegalArgumentException(what + " must be at least 1");
+        }
+    }
+
+    /**
+     * One payment rule: count payments of the same amount, stepping by days or by months.
+     */
+    static final class Series {
+
+        final LocalDate first;
+        final BigDecimal amount;
+        final int stepDays;
+        final int stepMonths;
+        final int count;
+
+        Series(LocalDate first, BigDecimal amount, int stepDays, int stepMonths, int count) {
+
+            this.first = first;
+            this.amount = amount;
+            this.stepDays = stepDays;
+            this.stepMonths = stepMonths;
+            this.count = count;
+        }
+
+        /**
+         * @param occurrence 0 for the first payment
+         */
+        LocalDate dateOf(int occurrence) {
+
+            // stepped from the first date each time, so a 31st doesn't drift to the 28th after February
+            return stepMonths > 0 ? first.plusMonths((long) stepMonths * occurrence)
+                    : first.plusDays((long) stepDays * occurrence);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+import java.math.BigDecimal;
+
+/**
+ * How far the same payment brings the principal down when it is split and paid bi-monthly
+ * versus paid once at the end of the month.
+ */
+public final class PaymentComparison {
+
+    private final BigDecimal startingPrincipal;
+    private final BigDecimal afterBimonthly;
+    private final BigDecimal afterMonthly;
+
+    public PaymentComparison(BigDecimal startingPrincipal, BigDecimal afterBimonthly, BigDecimal afterMonthly) {
+
+        this.startingPrincipal = startingPrincipal;
+        this.afterBimonthly = afterBimonthly;
+        this.afterMonthly = afterMonthly;
+    }
+
+    public BigDecimal getAfterBimonthly() {
+        return afterBimonthly;
+    }
+
+    public BigDecimal getAfterMonthly() {
+        return afterMonthly;
+    }
+
+    public BigDecimal getBimonthlyReduction() {
+
+        return startingPrincipal.subtract(afterBimonthly, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+    }
+
+    public BigDecimal getMonthlyReduction() {
+
+        return startingPrincipal.subtract(afterMonthly, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+    }
+
+    /**
+     * @return the difference in the two principal reductions, which is the interest saved
+     */
+    public BigDecimal getInterestSaved() {
+
+        return getBimonthlyReduction().subtract(getMonthlyReduction(), DepressingFigures.SIG_FIGS_AND_ROUNDING);
+    }
+}
@@ -0,0 +1,43 @@
+import java.math.BigDecimal;
+
+/**
+ * Receives the intermediate balances as the simulator works through a schedule.
+ * Every method does nothing by default, so a listener only overrides what it wants to hear about.
+ */
+public interface PaymentListener {
+
+    // the simulator checks for this one and skips building the intermediate balances entirely
+    PaymentListener SILENT = new PaymentListener() { };
+
+    /**
+     * Called by the solver before it replays the schedule for a guessed payment.
+     */
+    default void onTryingPayment(BigDecimal payment, int monthsToPay) {
+    }
+
+    /**
+     * Called after each month's payment has been applied and that month's interest has accrued.
+     */
+    default void onMonthPaid(int monthsPaid, BalancePair balance) {
+    }
+
+    /**
+     * Called when a payment series stops early because the principal went more than
+     * EPSILON below $0.00.
+     */
+    default void onPaidOff(int lastMonth) {
+    }
+
+    /**
+     * Called just before each half payment of a bi-monthly cycle is made.
+     * @param dayOfMonth 15 for the first payment, 5 for the second
+     */
+    default void onBiMonthlyPayment(int dayOfMonth, BalancePair balance) {
+    }
+
+    /**
+     * Called once both halves of a bi-monthly cycle have been paid.
+     */
+    default void onBiMonthlyPaid(BalancePair balance) {
+    }
+}
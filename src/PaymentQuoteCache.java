@@ -0,0 +1,210 @@
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers minimum payment quotes so the same question doesn't rerun the solver.
+ * Quotes are keyed on the balance, rate schedule, term and start date, with
+ * amounts normalized so that 100 and 100.00 are the same question. The least recently used
+ * quote is dropped once the cache is full, and quotes can also be given a time to live.
+ * Safe to share between threads.
+ */
+public class PaymentQuoteCache {
+
+    private final int mMaxEntries;
+    private final long mTimeToLiveNanos;
+    private final Map<QuoteKey, Quote> mQuotes;
+
+    private final LongAdder mHits = new LongAdder();
+    private final LongAdder mMisses = new LongAdder();
+    private final LongAdder mEvictions = new LongAdder();
+
+    /**
+     * @param maxEntries the most quotes to keep before the least recently used one is dropped
+     */
+    public PaymentQuoteCache(int maxEntries) {
+
+        this(maxEntries, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param maxEntries the most quotes to keep before the least recently used one is dropped
+     * @param timeToLive how long a quote stays good for, or 0 to keep it until it is evicted
+     */
+    public PaymentQuoteCache(int maxEntries, long timeToLive, TimeUnit unit) {
+
+        if (maxEntries < 1) {
+
+            throw new IllegalArgumentException("Cache must hold at least 1 entry");
+        }
+
+        mMaxEntries = maxEntries;
+        mTimeToLiveNanos = unit.toNanos(timeToLive);
+
+        // access order, so iteration starts from the least recently used quote
+        mQuotes = new LinkedHashMap<QuoteKey, Quote>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<QuoteKey, Quote> eldest) {
+
+                if (size() > mMaxEntries) {
+
+                    mEvictions.increment();
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Same as DepressingFigures.monthlyPaymentNeeded, but answers repeat questions from the cache.
+     * @param monthsToPayoff the number of months to fully pay off the balance
+     * @return the minimum monthly payment needed
+     */
+    public BigDecimal monthlyPaymentNeeded(DepressingFigures figures, int monthsToPayoff) {
+
+        QuoteKey key = new QuoteKey(figures, monthsToPayoff);
+        long now = System.nanoTime();
+
+        synchronized (mQuotes) {
+
+            Quote quote = mQuotes.get(key);
+
+            if (quote != null && !quote.isExpired(now)) {
+
+                mHits.increment();
+                return quote.payment;
+            }
+        }
+
+        mMisses.increment();
+
+        // solve outside the lock, so one slow solve doesn't hold up every other quote
+        BigDecimal payment = figures.monthlyPaymentNeeded(monthsToPayoff);
+
+        synchronized (mQuotes) {
+
+            mQuotes.put(key, new Quote(payment, now));
+        }
+
+        return payment;
+    }
+
+    public void clear() {
+
+        synchronized (mQuotes) {
+
+            mQuotes.clear();
+        }
+    }
+
+    public int size() {
+
+        synchronized (mQuotes) {
+
+            return mQuotes.size();
+        }
+    }
+
+    public long getHits() {
+        return mHits.sum();
+    }
+
+    public long getMisses() {
+        return mMisses.sum();
+    }
+
+    public long getEvictions() {
+        return mEvictions.sum();
+    }
+
+    public double getHitRate() {
+
+        long hits = getHits();
+        long total = hits + getMisses();
+
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+
+        return String.format("%d hit(s), %d miss(es), %d eviction(s), hit rate %.1f%%, %d/%d entries",
+                getHits(), getMisses(), getEvictions(), getHitRate() * 100, size(), mMaxEntries);
+    }
+
+    private class Quote {
+
+        final BigDecimal payment;
+        final long createdNanos;
+
+        Quote(BigDecimal payment, long createdNanos) {
+
+            this.payment = payment;
+            this.createdNanos = createdNanos;
+        }
+
+        boolean isExpired(long now) {
+
+            return mTimeToLiveNanos > 0 && now - createdNanos > mTimeToLiveNanos;
+        }
+    }
+
+    private static final class QuoteKey {
+
+        private final BigDecimal principal;
+        private final BigDecimal interest;
+        private final RateSchedule rates;
+        private final int startYear;
+        private final int startMonth;
+        private final int months;
+
+        QuoteKey(DepressingFigures figures, int months) {
+
+            BalancePair pair = figures.getBalancePair();
+
+            // stripped so that equal amounts with a different number of decimal places match
+            this.principal = pair.getPrincipal().stripTrailingZeros();
+            this.interest = pair.getInterest().stripTrailingZeros();
+            this.rates = figures.getSimulator().getRates();
+            this.startYear = figures.getmCurrentYear();
+            this.startMonth = figures.getmCurrentMonth();
+            this.months = months;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof QuoteKey)) {
+                return false;
+            }
+
+            QuoteKey other = (QuoteKey) o;
+
+            return startYear == other.startYear && startMonth == other.startMonth && months == other.months
+                    && principal.equals(other.principal) && interest.equals(other.interest)
+                    && rates.equals(other.rates);
+        }
+
+        @Override
+        public int hashCode() {
+
+            int result = principal.hashCode();
+            result = 31 * result + interest.hashCode();
+            result = 31 * result + rates.hashCode();
+            result = 31 * result + startYear;
+            result = 31 * result + startMonth;
+            result = 31 * result + months;
+
+            return result;
+        }
+    }
+}
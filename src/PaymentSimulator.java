@@ -0,0 +1,451 @@
+import java.math.BigDecimal;
+import java.util.SortedMap;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The arithmetic behind every payment mode, with no console output. Every monthly mode, and
+ * ScheduleIterator and LoanState, is built out of step, one month's payment and interest, so
+ * they all agree to the last digit and stop on the same test. The bi-monthly modes likewise
+ * share their two half payments.
+ */
+public class PaymentSimulator {
+
+    private static final BigDecimal TWO = new BigDecimal(2);
+
+    private final RateSchedule mRates;
+
+    public PaymentSimulator() {
+
+        this(DepressingFigures.ANNUAL_RATE, DayCount.ACTUAL_365_25);
+    }
+
+    /**
+     * @param annualRate the yearly interest rate as a decimal, e.g. 0.05125 for 5.125%
+     * @param dayCount how days are counted, and how many days the yearly rate is spread over
+     */
+    public PaymentSimulator(BigDecimal annualRate, DayCount dayCount) {
+
+        this(RateSchedule.fixed(annualRate, dayCount));
+    }
+
+    /**
+     * @param rates the rate charged each month, with its accrual factors already worked out
+     */
+    public PaymentSimulator(RateSchedule rates) {
+
+        mRates = rates;
+    }
+
+    public RateSchedule getRates() {
+
+        return mRates;
+    }
+
+    /**
+     * @return a simulator that charges the given rates instead
+     */
+    public PaymentSimulator withRates(RateSchedule rates) {
+
+        return new PaymentSimulator(rates);
+    }
+
+    /**
+     *
+     * @param month a number 1-12 that represents that month
+     *                    in the calendar year
+     * @return the number of days of interest that month accrues
+     */
+    public int daysInMonth(int year, int month) {
+
+        return mRates.daysInMonth(year, month);
+    }
+
+    /**
+     *
+     * @param principal the principal interest accrues on
+     * @param year the year the interest starts accruing in
+     * @param month a number 1-12 for the month the interest starts accruing in
+     * @param days the number of days since the last payment
+     * @return the dollar amount of interest that accumulates over that many days
+     */
+    public BigDecimal interestAccumulated(BigDecimal principal, int year, int month, int days) {
+
+        return principal.multiply(mRates.accrualFactor(year, month, days), DepressingFigures.SIG_FIGS_AND_ROUNDING);
+    }
+
+    /**
+     * @return the interest a whole month accrues on the principal
+     */
+    public BigDecimal monthlyInterest(BigDecimal principal, int year, int month) {
+
+        return principal.multiply(mRates.monthlyFactor(year, month), DepressingFigures.SIG_FIGS_AND_ROUNDING);
+    }
+
+    /**
+     * Applies a payment to interest first and anything left over to principal.
+     * @return the balance after the payment
+     */
+    public BalancePair makePayment(BalancePair balance, BigDecimal payment) {
+
+        BigDecimal interest = balance.getInterest();
+
+        if (payment.compareTo(interest) < 1) { // payment is less than or equal to current interest
+
+            return new BalancePair(balance.getPrincipal(),
+                    interest.subtract(payment, DepressingFigures.SIG_FIGS_AND_ROUNDING));
+        }
+
+        BigDecimal appliedToPrincipal = payment.subtract(interest, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+
+        return new BalancePair(balance.getPrincipal()
+                .subtract(appliedToPrincipal, DepressingFigures.SIG_FIGS_AND_ROUNDING), new BigDecimal("0.00"));
+    }
+
+    /**
+     * One month of a payment series: applies the payment to interest first and anything left
+     * over to principal, then accrues the month's interest on the principal that's left.
+     * @param period the number of this payment, 1 for the first
+     * @param balance the balance before the payment
+     * @param year the year the payment is made in
+     * @param month a number 1-12 for the month the payment is made in
+     * @return the payment's row, whose balance includes the month's interest
+     */
+    public ScheduleRow step(int period, BalancePair balance, BigDecimal payment, int year, int month) {
+
+        BigDecimal principal = balance.getPrincipal();
+        BigDecimal interest = balance.getInterest();
+        BigDecimal interestPaid;
+        BigDecimal principalPaid;
+
+        // apply payment to interest first
+        if (payment.compareTo(interest) < 1) {
+
+            interestPaid = payment;
+            principalPaid = BigDecimal.ZERO;
+            interest = interest.subtract(payment, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+
+        } else {
+
+            interestPaid = interest;
+            principalPaid = payment.subtract(interest, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+            principal = principal.subtract(principalPaid, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+            interest = BigDecimal.ZERO;
+        }
+
+        // interest that accumulates in the month between payments
+        BigDecimal interestAccrued = monthlyInterest(principal, year, month);
+
+        return new ScheduleRow(period, year, month, payment, interestPaid, principalPaid, interestAccrued,
+                new BalancePair(principal, interest.add(interestAccrued, DepressingFigures.SIG_FIGS_AND_ROUNDING)));
+    }
+
+    /**
+     * @return true if the principal is more than EPSILON below $0.00, after which a payment
+     *         series stops making payments
+     */
+    public static boolean isOverpaid(BigDecimal principal) {
+
+        return principal.negate().compareTo(DepressingFigures.EPSILON) > 0;
+    }
+
+    /**
+     * Makes the same payment every month, accruing each month's interest after the payment,
+     * and stops early once the principal is more than EPSILON below $0.00.
+     * @param start the balance before the first payment
+     * @param startYear the year the first payment is made in
+     * @param startMonth a number 1-12 for the month the first payment is made in
+     * @param payment the amount to be applied each month
+     * @param monthsToPay the number of months to apply the payment
+     * @param listener told about each month, or PaymentListener.SILENT
+     * @return the balance after the last payment and its month's interest
+     */
+    public BalancePair paymentSeries(BalancePair start, int startYear, int startMonth, BigDecimal payment,
+                                     int monthsToPay, PaymentListener listener) {
+
+        return series(start, startYear, startMonth, payment, monthsToPay, listener, true, null);
+    }
+
+    /**
+     * The same payment series, adding up what the payments went to as it goes.
+     * @param start the balance before the first payment
+     * @param startYear the year the first payment is made in
+     * @param startMonth a number 1-12 for the month the first payment is made in
+     * @param payment the amount to be applied each month
+     * @param monthsToPay the number of months to apply the payment
+     * @param listener told about each month, or PaymentListener.SILENT
+     * @return the balance after the last payment, with the interest and principal paid in total
+     *         and the interest paid in each calendar year. Principal paid is never more than
+     *         the principal owed, so a last payment that overpays only counts what it paid off
+     */
+    public PaymentTotals paymentSeriesTotals(BalancePair start, int startYear, int startMonth, BigDecimal payment,
+                                             int monthsToPay, PaymentListener listener) {
+
+        Tally tally = new Tally();
+        BalancePair balance = series(start, startYear, startMonth, payment, monthsToPay, listener, true, tally);
+
+        return new PaymentTotals(balance, tally.monthsPaid, tally.interestPaid, tally.principalPaid, tally.byYear);
+    }
+
+    /**
+     * The same payment series, without counting its length in the metrics. Used by the solver
+     * to score each guess.
+     */
+    BalancePair replaySeries(BalancePair start, int startYear, int startMonth, BigDecimal payment,
+                             int monthsToPay, PaymentListener listener) {
+
+        return series(start, startYear, startMonth, payment, monthsToPay, listener, false, null);
+    }
+
+    // tally, if not null, has each month's payment added to it
+    private BalancePair series(BalancePair start, int startYear, int startMonth, BigDecimal payment,
+                               int monthsToPay, PaymentListener listener, boolean recordLength, Tally tally) {
+
+        BalancePair balance = start;
+        int currentYear = startYear;
+        int currentMonth = startMonth;
+        boolean silent = listener == PaymentListener.SILENT;
+
+        // number of months we've made the payment
+        int monthsPaid = 0;
+
+        while (monthsPaid < monthsToPay) {
+
+            ScheduleRow row = step(monthsPaid + 1, balance, payment, currentYear, currentMonth);
+
+            if (tally != null) {
+
+                // whatever the last payment overpays doesn't go to principal
+                tally.add(currentYear, row.getInterestPaid(),
+                        row.getPrincipalPaid().min(balance.getPrincipal().max(BigDecimal.ZERO)));
+            }
+
+            balance = row.getBalance();
+            currentYear = LoanCalendar.yearOfMonthAfter(currentYear, currentMonth);
+            currentMonth = LoanCalendar.monthAfter(currentMonth);
+            monthsPaid++;
+
+            if (!silent) {
+
+                listener.onMonthPaid(monthsPaid, balance);
+            }
+
+            // if balance goes lower than EPSILON less than 0.00, stop making payments
+            if (isOverpaid(balance.getPrincipal())) {
+
+                if (!silent) {
+
+                    listener.onPaidOff(monthsPaid - 1);
+                }
+
+                break;
+            }
+        }
+
+        if (recordLength) {
+
+            CalculatorMetrics.scheduleLength(monthsPaid);
+        }
+
+        return balance;
+    }
+
+    /**
+     * Makes the same payment every month until one leaves the principal no more than EPSILON
+     * above $0.00, and counts the payments up to that one. This is not the test a payment
+     * series stops on: a series only stops early once a payment leaves the principal more than
+     * EPSILON below $0.00, so a series of this many payments usually runs to its end, with the
+     * last payment overpaying a little. Both look at the principal straight after a payment,
+     * which that month's interest doesn't change. DoubleSimulator.monthsToPayoff counts the
+     * same way.
+     * @param start the balance before the first payment
+     * @param startYear the year the first payment is made in
+     * @param startMonth a number 1-12 for the month the first payment is made in
+     * @param payment the amount to be applied each month
+     * @param maxMonths the most months to make the payment for
+     * @return the number of the payment that left the principal within EPSILON of $0.00, or
+     *         PaymentSolver.NEVER if maxMonths weren't enough
+     */
+    public int monthsToPayoff(BalancePair start, int startYear, int startMonth, BigDecimal payment, int maxMonths) {
+
+        BalancePair balance = start;
+        int currentYear = startYear;
+        int currentMonth = startMonth;
+
+        for (int monthsPaid = 1; monthsPaid <= maxMonths; monthsPaid++) {
+
+            ScheduleRow row = step(monthsPaid, balance, payment, currentYear, currentMonth);
+            balance = row.getBalance();
+
+            if (balance.getPrincipal().compareTo(DepressingFigures.EPSILON) <= 0) {
+
+                CalculatorMetrics.scheduleLength(monthsPaid);
+                return monthsPaid;
+            }
+
+            currentYear = LoanCalendar.yearOfMonthAfter(currentYear, currentMonth);
+            currentMonth = LoanCalendar.monthAfter(currentMonth);
+        }
+
+        CalculatorMetrics.scheduleLength(maxMonths);
+
+        return PaymentSolver.NEVER;
+    }
+
+    /**
+     * The same payment series as above, as a stream of rows that are only worked out as they
+     * are read. Nothing is held on to once a row has been passed on.
+     * @param start the balance before the first payment
+     * @param startYear the year the first payment is made in
+     * @param startMonth a number 1-12 for the month the first payment is made in
+     * @param payment the amount to be applied each month
+     * @param monthsToPay the most months to apply the payment for
+     * @return one row per month, ending early if the loan is paid off
+     */
+    public Stream<ScheduleRow> paymentSchedule(BalancePair start, int startYear, int startMonth,
+                                               BigDecimal payment, int monthsToPay) {
+
+        ScheduleIterator rows = new ScheduleIterator(this, start, startYear, startMonth, payment, monthsToPay);
+
+        // size is unknown up front, since the loan may be paid off before monthsToPay
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    /**
+     * Splits a payment into two equal halves, one paid on the 15th of the month and the other
+     * on the 5th of the following month, with interest accruing from the 5th to the 15th and
+     * then on to the 5th. If the rate changes on the 1st of the following month, the days from
+     * then to the 5th accrue at the new rate.
+     * @param start the balance on the 5th of the month
+     * @param year the year the first half is paid in
+     * @param month a number 1-12 for the month the first half is paid in
+     * @param payment the full amount to split
+     * @param listener told about each half payment, or PaymentListener.SILENT
+     * @return the balance after the payment on the 5th of the following month
+     */
+    public BalancePair biMonthlyPayments(BalancePair start, int year, int month, BigDecimal payment,
+                                         PaymentListener listener) {
+
+        BalancePair balance = biMonthlyRows(start, year, month, payment, listener)[1].getBalance();
+
+        listener.onBiMonthlyPaid(balance);
+
+        return balance;
+    }
+
+    /**
+     * The same two half payments as biMonthlyPayments, as schedule rows. Each row's interest
+     * accrued is what built up since the previous payment, before this one was applied.
+     * @param start the balance on the 5th of the month
+     * @param year the year the first half is paid in
+     * @param month a number 1-12 for the month the first half is paid in
+     * @param payment the full amount to split
+     * @return the payment on the 15th, then the payment on the 5th of the following month
+     */
+    public Stream<ScheduleRow> biMonthlySchedule(BalancePair start, int year, int month, BigDecimal payment) {
+
+        return Stream.of(biMonthlyRows(start, year, month, payment, PaymentListener.SILENT));
+    }
+
+    // the two half payments, telling the listener about the balance just before each one
+    private ScheduleRow[] biMonthlyRows(BalancePair start, int year, int month, BigDecimal payment,
+                                        PaymentListener listener) {
+
+        BigDecimal halfPayment = payment.divide(TWO, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+
+        // from 5th to 15th of month
+        BigDecimal firstAccrued = interestAccumulated(start.getPrincipal(), year, month, 10);
+        BalancePair first = start.withInterest(start.getInterest().add(firstAccrued));
+
+        listener.onBiMonthlyPayment(15, first);
+        BalancePair afterFirst = makePayment(first, halfPayment); // 1st payment, on 15th of month
+
+        // from 15th to 5th of the following month
+        BigDecimal secondAccrued = interestToFifthOfNextMonth(afterFirst.getPrincipal(), year, month);
+        BalancePair second = afterFirst.withInterest(afterFirst.getInterest().add(secondAccrued));
+
+        listener.onBiMonthlyPayment(5, second);
+        BalancePair afterSecond = makePayment(second, halfPayment); // 2nd payment, on 5th of following month
+
+        return new ScheduleRow[]{scheduleRow(1, year, month, 15, halfPayment, first, afterFirst, firstAccrued),
+                scheduleRow(2, LoanCalendar.yearOfMonthAfter(year, month), LoanCalendar.monthAfter(month), 5,
+                        halfPayment, second, afterSecond, secondAccrued)};
+    }
+
+    // interest from the 15th of the month to the 5th of the next. if the rate changes on the 1st,
+    // the days from the 1st on are charged at the new rate, the same way EventScheduler splits
+    private BigDecimal interestToFifthOfNextMonth(BigDecimal principal, int year, int month) {
+
+        int days = daysInMonth(year, month);
+        int nextYear = LoanCalendar.yearOfMonthAfter(year, month);
+        int nextMonth = LoanCalendar.monthAfter(month);
+
+        if (mRates.segmentFor(year, month) == mRates.segmentFor(nextYear, nextMonth)) {
+
+            return interestAccumulated(principal, year, month, days - 10);
+        }
+
+        // the 15th to the 1st, then the 1st to the 5th
+        return interestAccumulated(principal, year, month, days - 14)
+                .add(interestAccumulated(principal, nextYear, nextMonth, 4), DepressingFigures.SIG_FIGS_AND_ROUNDING);
+    }
+
+    // a row for a payment that took the balance from before to after
+    static ScheduleRow scheduleRow(int period, int year, int month, int dayOfMonth, BigDecimal payment,
+                                           BalancePair before, BalancePair after, BigDecimal interestAccrued) {
+
+        BigDecimal principalPaid = before.getPrincipal().subtract(after.getPrincipal(),
+                DepressingFigures.SIG_FIGS_AND_ROUNDING);
+
+        return new ScheduleRow(period, year, month, dayOfMonth, payment,
+                payment.subtract(principalPaid, DepressingFigures.SIG_FIGS_AND_ROUNDING), principalPaid,
+                interestAccrued, after);
+    }
+
+    /**
+     * Makes the same payment split in two and paid bi-monthly, then in one go at the end of
+     * the month, and compares how far each one brings the principal down.
+     * @param start the balance on the 5th of the month
+     * @param year the year the payment is made in
+     * @param month a number 1-12 for the month the payment is made in
+     * @param payment the full amount paid either way
+     * @param listener told about each half of the bi-monthly payment, or PaymentListener.SILENT
+     */
+    public PaymentComparison compareMonthlyVsBimonthly(BalancePair start, int year, int month, BigDecimal payment,
+                                                       PaymentListener listener) {
+
+        BigDecimal afterBimonthly = biMonthlyPayments(start, year, month, payment, listener).getPrincipal();
+
+        // the same payment, but in one instead of split into two.
+        // add the interest accumulated over the whole month to the starting interest
+        BigDecimal interestToAdd = monthlyInterest(start.getPrincipal(), year, month);
+        BalancePair monthly = start.withInterest(start.getInterest()
+                .add(interestToAdd, DepressingFigures.SIG_FIGS_AND_ROUNDING));
+
+        // apply the single monthly payment
+        BigDecimal afterMonthly = makePayment(monthly, payment).getPrincipal();
+
+        return new PaymentComparison(start.getPrincipal(), afterBimonthly, afterMonthly);
+    }
+
+    // what a series' payments have gone to so far
+    private static final class Tally {
+
+        long monthsPaid;
+        BigDecimal interestPaid = BigDecimal.ZERO;
+        BigDecimal principalPaid = BigDecimal.ZERO;
+        final SortedMap<Integer, BigDecimal> byYear = new TreeMap<>();
+
+        void add(int year, BigDecimal interest, BigDecimal principal) {
+
+            monthsPaid++;
+            interestPaid = interestPaid.add(interest, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+            principalPaid = principalPaid.add(principal, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+            byYear.merge(year, interest, (a, b) -> a.add(b, DepressingFigures.SIG_FIGS_AND_ROUNDING));
+        }
+    }
+}
@@ -0,0 +1,33 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * The result of a minimum payment solve: the payment itself and how many schedule
+ * replays the solver needed to find it.
+ */
+public class PaymentSolution {
+
+    private final BigDecimal payment;
+    private final int iterations;
+
+    public PaymentSolution(BigDecimal payment, int iterations) {
+
+        this.payment = payment;
+        this.iterations = iterations;
+    }
+
+    public BigDecimal getPayment() {
+        return payment;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    @Override
+    public String toString() {
+
+        return "Payment: $ " + payment.setScale(2, RoundingMode.HALF_EVEN) +
+                " (" + iterations + " iteration(s))";
+    }
+}
@@ -0,0 +1,364 @@
+import java.math.BigDecimal;
+import java.util.function.UnaryOperator;
+
+/**
+ * Solves for the minimum monthly payment needed to pay off a loan in a given number of months,
+ * and the inverse questions: how long a payment takes to pay the loan off, and how much extra,
+ * once up front or every month, pays it off by a target month. The search starts from the
+ * analytic annuity payment and then runs secant corrections against the exact day-count
+ * schedule, falling back to a bisection step whenever the secant step leaves the bracket. Both
+ * this and the plain bisection search report how many schedule replays they needed, so the two
+ * can be compared.
+ */
+public class PaymentSolver {
+
+    private static final BigDecimal TWO = new BigDecimal(2);
+
+    /**
+     * What monthsToPayoff returns when the payment doesn't pay the loan off in time.
+     */
+    public static final int NEVER = -1;
+
+    // far more replays than any search needs; halving a bracket 200 times takes it well past
+    // the 20 significant digits the amounts are worked to
+    private static final int MAX_ITERATIONS = 200;
+
+    private final DepressingFigures mFigures;
+    private final PaymentListener mListener;
+
+    public PaymentSolver(DepressingFigures figures) {
+
+        this(figures, PaymentListener.SILENT);
+    }
+
+    /**
+     * @param listener told about each guessed payment and the schedule it produced
+     */
+    public PaymentSolver(DepressingFigures figures, PaymentListener listener) {
+
+        mFigures = figures;
+        mListener = listener;
+    }
+
+    /**
+     * Finds the payment using the annuity seed and secant corrections.
+     * @param monthsToPayoff the number of months to fully pay off the balance
+     * @return the payment and the number of schedule replays it took
+     */
+    public PaymentSolution solve(int monthsToPayoff) {
+
+        checkMonths(monthsToPayoff);
+
+        BalancePair pair = mFigures.getBalancePair();
+
+        // paying zero leaves the principal untouched, paying everything up front clears it on
+        // the first payment, so the answer always lies between these two
+        BigDecimal highPayment = pair.getPrincipal().add(pair.getInterest(), DepressingFigures.SIG_FIGS_AND_ROUNDING);
+
+        return search(payment -> finalPrincipal(payment, monthsToPayoff), BigDecimal.ZERO, highPayment,
+                annuityPayment(monthsToPayoff), new BigDecimal(monthsToPayoff));
+    }
+
+    /**
+     * Same as solve, but starting from a guess and bracket the caller already knows, such as
+     * the answers for similar loans.
+     * @param monthsToPayoff the number of months to fully pay off the balance
+     * @param guess the first payment to try
+     * @param low a payment known to be too low, or zero
+     * @param high a payment known to be high enough, or null to use the whole balance
+     * @return the payment and the number of schedule replays it took
+     */
+    public PaymentSolution solveFrom(int monthsToPayoff, BigDecimal guess, BigDecimal low, BigDecimal high) {
+
+        checkMonths(monthsToPayoff);
+
+        if (high == null) {
+
+            BalancePair pair = mFigures.getBalancePair();
+            high = pair.getPrincipal().add(pair.getInterest(), DepressingFigures.SIG_FIGS_AND_ROUNDING);
+        }
+
+        return search(payment -> finalPrincipal(payment, monthsToPayoff), low, high,
+                keepInBracket(guess, low, high), new BigDecimal(monthsToPayoff));
+    }
+
+    /**
+     * Runs the payment every month until the principal is within EPSILON of $0.00, stopping
+     * as soon as it gets there. See PaymentSimulator.monthsToPayoff for how this differs from
+     * where a payment series stops.
+     * @param payment the amount to be applied each month
+     * @param maxMonths the most months to try before giving up
+     * @return the number of months it takes to pay off the loan, or NEVER if it isn't paid
+     *         off within maxMonths
+     */
+    public int monthsToPayoff(BigDecimal payment, int maxMonths) {
+
+        checkMonths(maxMonths);
+
+        return mFigures.getSimulator().monthsToPayoff(mFigures.getBalancePair(), mFigures.getmCurrentYear(),
+                mFigures.getmCurrentMonth(), payment, maxMonths);
+    }
+
+    /**
+     * Finds the smallest amount to take off the principal up front, on top of the regular
+     * payment, for the loan to be paid off within the given number of months.
+     * @param payment the amount to be applied each month
+     * @param monthsToPayoff the number of months to fully pay off the balance
+     * @return the extra principal, $0.00 if the payment already pays the loan off in time,
+     *         and the number of schedule replays it took
+     */
+    public PaymentSolution oneTimeExtra(BigDecimal payment, int monthsToPayoff) {
+
+        checkMonths(monthsToPayoff);
+
+        BalancePair pair = mFigures.getBalancePair();
+
+        UnaryOperator<BigDecimal> finalAmount = extra -> mFigures.withBalance(pair.withPrincipal(
+                pair.getPrincipal().subtract(extra, DepressingFigures.SIG_FIGS_AND_ROUNDING)))
+                .principalAfterPayments(payment, monthsToPayoff, PaymentListener.SILENT);
+
+        BigDecimal withoutExtra = finalAmount.apply(BigDecimal.ZERO);
+
+        if (withoutExtra.compareTo(DepressingFigures.EPSILON) <= 0) {
+
+            return solution(BigDecimal.ZERO, 1);
+        }
+
+        // each dollar of extra principal takes a dollar plus the interest it would have grown by
+        // off what's left at the end, so what's left without any extra is an upper bound, and
+        // that discounted back to today is a close first guess
+        BigDecimal growth = new BigDecimal(Math.pow(1 + monthlyRate(), monthsToPayoff),
+                DepressingFigures.SIG_FIGS_AND_ROUNDING);
+        PaymentSolution extra = search(finalAmount, BigDecimal.ZERO, withoutExtra,
+                withoutExtra.divide(growth, DepressingFigures.SIG_FIGS_AND_ROUNDING), growth);
+
+        return new PaymentSolution(extra.getPayment(), extra.getIterations() + 1);
+    }
+
+    /**
+     * Finds how much to add to the regular payment every month for the loan to be paid off
+     * within the given number of months.
+     * @param payment the amount already being applied each month
+     * @param monthsToPayoff the number of months to fully pay off the balance
+     * @return the extra each month, $0.00 if the payment is already enough, and the number
+     *         of schedule replays it took
+     */
+    public PaymentSolution recurringExtra(BigDecimal payment, int monthsToPayoff) {
+
+        // the payment plus the extra is just the minimum payment for the term
+        PaymentSolution needed = solve(monthsToPayoff);
+        BigDecimal extra = needed.getPayment().subtract(payment, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+
+        return new PaymentSolution(extra.signum() > 0 ? extra : BigDecimal.ZERO, needed.getIterations());
+    }
+
+    /**
+     * Bracketed secant search for the amount that leaves the principal within EPSILON of $0.00,
+     * where paying more always leaves less.
+     * @param finalAmount the principal left at the end for a given amount
+     * @param low an amount known to be too little
+     * @param high an amount known to be enough to pay everything off
+     * @param first the first guess
+     * @param spread what the principal left after the first guess is divided by, to step to the second
+     */
+    private PaymentSolution search(UnaryOperator<BigDecimal> finalAmount, BigDecimal low, BigDecimal high,
+                                   BigDecimal first, BigDecimal spread) {
+
+        BigDecimal lowPayment = low;
+        BigDecimal highPayment = high;
+
+        BigDecimal previousPayment = first;
+        BigDecimal previousAmount = finalAmount.apply(previousPayment);
+        int iterations = 1;
+
+        if (withinEpsilon(previousAmount)) {
+
+            return solution(previousPayment, iterations);
+        }
+
+        if (previousAmount.signum() > 0) {
+
+            lowPayment = previousPayment;
+
+        } else {
+
+            highPayment = previousPayment;
+        }
+
+        // second point: the first guess moved by whatever it left over (or overpaid), divided by spread
+        BigDecimal guessPayment = previousPayment.add(previousAmount
+                .divide(spread, DepressingFigures.SIG_FIGS_AND_ROUNDING), DepressingFigures.SIG_FIGS_AND_ROUNDING);
+        guessPayment = keepInBracket(guessPayment, lowPayment, highPayment);
+
+        while (true) {
+
+            BigDecimal amount = finalAmount.apply(guessPayment);
+            iterations++;
+
+            if (withinEpsilon(amount)) {
+
+                return solution(guessPayment, iterations);
+            }
+
+            checkIterations(iterations);
+
+            if (amount.signum() > 0) { // payment was too low
+
+                lowPayment = guessPayment;
+
+            } else { // payment was too high
+
+                highPayment = guessPayment;
+            }
+
+            BigDecimal nextPayment;
+            BigDecimal slope = amount.subtract(previousAmount, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+
+            if (slope.signum() == 0) {
+
+                nextPayment = midpoint(lowPayment, highPayment);
+
+            } else {
+
+                // secant step: where the line through the last two guesses crosses $0.00
+                nextPayment = guessPayment.subtract(amount
+                        .multiply(guessPayment.subtract(previousPayment, DepressingFigures.SIG_FIGS_AND_ROUNDING),
+                                DepressingFigures.SIG_FIGS_AND_ROUNDING)
+                        .divide(slope, DepressingFigures.SIG_FIGS_AND_ROUNDING), DepressingFigures.SIG_FIGS_AND_ROUNDING);
+            }
+
+            previousPayment = guessPayment;
+            previousAmount = amount;
+            guessPayment = keepInBracket(nextPayment, lowPayment, highPayment);
+        }
+    }
+
+    /**
+     * Finds the payment by bisecting between no payment and paying the whole balance at once.
+     * Kept so the secant search can be benchmarked against it.
+     * @param monthsToPayoff the number of months to fully pay off the balance
+     * @return the payment and the number of schedule replays it took
+     */
+    public PaymentSolution bisect(int monthsToPayoff) {
+
+        checkMonths(monthsToPayoff);
+
+        BalancePair pair = mFigures.getBalancePair();
+        BigDecimal lowPayment = BigDecimal.ZERO;
+        BigDecimal highPayment = pair.getPrincipal().add(pair.getInterest(), DepressingFigures.SIG_FIGS_AND_ROUNDING);
+        int iterations = 0;
+
+        while (true) {
+
+            BigDecimal guessPayment = midpoint(lowPayment, highPayment);
+            BigDecimal finalAmount = finalPrincipal(guessPayment, monthsToPayoff);
+            iterations++;
+
+            if (withinEpsilon(finalAmount)) {
+
+                return solution(guessPayment, iterations);
+            }
+
+            checkIterations(iterations);
+
+            if (finalAmount.signum() > 0) {
+
+                lowPayment = guessPayment;
+
+            } else {
+
+                highPayment = guessPayment;
+            }
+        }
+    }
+
+    /**
+     * The level payment that would clear the balance if every month had the average
+     * number of days in it. Only used as a starting guess, so double precision is plenty.
+     */
+    private BigDecimal annuityPayment(int monthsToPayoff) {
+
+        BalancePair pair = mFigures.getBalancePair();
+        double balance = pair.getPrincipal().add(pair.getInterest()).doubleValue();
+        double monthlyRate = monthlyRate();
+
+        double payment;
+
+        if (monthlyRate == 0) {
+
+            payment = balance / monthsToPayoff;
+
+        } else {
+
+            // payments are made at the start of each month, before that month's interest accrues
+            double growth = Math.pow(1 + monthlyRate, monthsToPayoff);
+            payment = balance * monthlyRate * (growth / (1 + monthlyRate)) / (growth - 1);
+        }
+
+        return new BigDecimal(payment, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+    }
+
+    // the starting daily rate spread over an average month
+    private double monthlyRate() {
+
+        return mFigures.getSimulator().getRates()
+                .dailyRateOn(mFigures.getmCurrentYear(), mFigures.getmCurrentMonth()).doubleValue() * 365 / 12;
+    }
+
+    private BigDecimal finalPrincipal(BigDecimal payment, int monthsToPayoff) {
+
+        mListener.onTryingPayment(payment, monthsToPayoff);
+
+        return mFigures.principalAfterPayments(payment, monthsToPayoff, mListener);
+    }
+
+    private static BigDecimal keepInBracket(BigDecimal payment, BigDecimal low, BigDecimal high) {
+
+        if (payment.compareTo(low) <= 0 || payment.compareTo(high) >= 0) {
+
+            return midpoint(low, high);
+        }
+
+        return payment;
+    }
+
+    private static BigDecimal midpoint(BigDecimal low, BigDecimal high) {
+
+        return low.add(high, DepressingFigures.SIG_FIGS_AND_ROUNDING)
+                .divide(TWO, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+    }
+
+    // true if the ending amount is within EPSILON of $0.00
+    private static boolean withinEpsilon(BigDecimal amount) {
+
+        return amount.abs().compareTo(DepressingFigures.EPSILON) <= 0;
+    }
+
+    // every finished search is counted in the solver iteration histogram
+    private static PaymentSolution solution(BigDecimal payment, int iterations) {
+
+        CalculatorMetrics.solverIterations(iterations);
+
+        return new PaymentSolution(payment, iterations);
+    }
+
+    // a search that hasn't converged by now never will, e.g. when a negative balance leaves no
+    // payment between the bounds, so give up rather than spin forever
+    private static void checkIterations(int iterations) {
+
+        if (iterations >= MAX_ITERATIONS) {
+
+            CalculatorMetrics.solverIterations(iterations);
+            throw new ArithmeticException("No payment found after " + iterations + " tries");
+        }
+    }
+
+    private static void checkMonths(int monthsToPayoff) {
+
+        if (monthsToPayoff < 1) {
+
+            CalculatorMetrics.invalid("monthsToPayoff");
+            throw new IllegalArgumentException("Months to pay off must be at least 1");
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * What a payment series paid in total, added up as it ran: how much of the payments went to
+ * interest and how much to principal, the interest paid in each calendar year for tax
+ * statements, and the balance it ended on. Totals for separate loans add up with plus, in any
+ * order, so parallel workers can each total their own loans and combine them at the end
+ * without going back over any schedule.
+ */
+public final class PaymentTotals {
+
+    /**
+     * Nothing paid and nothing owed, to start adding up from.
+     */
+    public static final PaymentTotals NONE = new PaymentTotals(new BalancePair(BigDecimal.ZERO, BigDecimal.ZERO),
+            0, BigDecimal.ZERO, BigDecimal.ZERO, new TreeMap<>());
+
+    private final BalancePair finalBalance;
+    private final long monthsPaid;
+    private final BigDecimal interestPaid;
+    private final BigDecimal principalPaid;
+    private final SortedMap<Integer, BigDecimal> interestPaidByYear;
+
+    /**
+     * @param interestPaidByYear the interest paid in each calendar year; kept as is, so don't change it afterwards
+     */
+    public PaymentTotals(BalancePair finalBalance, long monthsPaid, BigDecimal interestPaid, BigDecimal principalPaid,
+                         SortedMap<Integer, BigDecimal> interestPaidByYear) {
+
+        this.finalBalance = finalBalance;
+        this.monthsPaid = monthsPaid;
+        this.interestPaid = interestPaid;
+        this.principalPaid = principalPaid;
+        this.interestPaidByYear = Collections.unmodifiableSortedMap(interestPaidByYear);
+    }
+
+    /**
+     * @return the balance after the last payment, or for combined totals the sum of every loan's
+     */
+    public BalancePair getFinalBalance() {
+        return finalBalance;
+    }
+
+    /**
+     * @return the number of payments made, over every loan for combined totals
+     */
+    public long getMonthsPaid() {
+        return monthsPaid;
+    }
+
+    public BigDecimal getInterestPaid() {
+        return interestPaid;
+    }
+
+    /**
+     * @return the principal the payments paid off, leaving out anything a last payment overpaid
+     */
+    public BigDecimal getPrincipalPaid() {
+        return principalPaid;
+    }
+
+    /**
+     * @return the interest paid by the payments made in each calendar year, by year
+     */
+    public SortedMap<Integer, BigDecimal> getInterestPaidByYear() {
+        return interestPaidByYear;
+    }
+
+    /**
+     * @return the totals of both series together
+     */
+    public PaymentTotals plus(PaymentTotals other) {
+
+        SortedMap<Integer, BigDecimal> byYear = new TreeMap<>(interestPaidByYear);
+
+        for (Map.Entry<Integer, BigDecimal> year : other.interestPaidByYear.entrySet()) {
+
+            byYear.merge(year.getKey(), year.getValue(),
+                    (a, b) -> a.add(b, DepressingFigures.SIG_FIGS_AND_ROUNDING));
+        }
+
+        BalancePair balance = new BalancePair(
+                finalBalance.getPrincipal().add(other.finalBalance.getPrincipal(), DepressingFigures.SIG_FIGS_AND_ROUNDING),
+                finalBalance.getInterest().add(other.finalBalance.getInterest(), DepressingFigures.SIG_FIGS_AND_ROUNDING));
+
+        return new PaymentTotals(balance, monthsPaid + other.monthsPaid,
+                interestPaid.add(other.interestPaid, DepressingFigures.SIG_FIGS_AND_ROUNDING),
+                principalPaid.add(other.principalPaid, DepressingFigures.SIG_FIGS_AND_ROUNDING), byYear);
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder()
+                .append(finalBalance)
+                .append("\nTotal interest paid: $ ").append(interestPaid.setScale(2, RoundingMode.HALF_EVEN))
+                .append("\nTotal principal paid: $ ").append(principalPaid.setScale(2, RoundingMode.HALF_EVEN))
+                .append(" over ").append(monthsPaid).append(" payment(s)");
+
+        for (Map.Entry<Integer, BigDecimal> year : interestPaidByYear.entrySet()) {
+
+            sb.append("\nInterest paid in ").append(year.getKey()).append(": $ ")
+                    .append(year.getValue().setScale(2, RoundingMode.HALF_EVEN));
+        }
+
+        return sb.toString();
+    }
+}
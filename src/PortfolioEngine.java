@@ -0,0 +1,428 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Runs payment series and minimum payment solves for a whole portfolio of loans at once.
+ * Every loan gets its own DepressingFigures, so the loans are split across the cores of a
+ * fork-join pool with a parallel stream and nothing is shared between them. Loans in a LoanBook
+ * are run on the fixed point engine straight off the mapped file instead.
+ */
+public class PortfolioEngine {
+
+    // sorted loans solved one after another on the same thread, each starting from the last
+    private static final int WARM_START_CHUNK = 1024;
+
+    private final ForkJoinPool mPool;
+
+    public PortfolioEngine() {
+
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool the pool the loans are split across; its parallelism decides how many cores are used
+     */
+    public PortfolioEngine(ForkJoinPool pool) {
+
+        mPool = pool;
+    }
+
+    /**
+     * Makes each loan's payment for its number of months.
+     * @return each loan's balance after its last payment
+     */
+    public BatchResult<BalancePair> payoffSchedules(List<Loan> loans) {
+
+        return run(CalculatorMetrics.Operation.BATCH_PAYSERIES, loans, loan -> {
+
+            if (loan.getPayment() == null) {
+
+                CalculatorMetrics.invalid("payment");
+                throw new IllegalArgumentException("No payment given for payseries");
+            }
+
+            return loan.newFigures()
+                    .makePaymentSeries(loan.getPayment(), loan.getMonths(), PaymentListener.SILENT);
+        });
+    }
+
+    /**
+     * Makes each loan's payment for its number of months, adding up what the payments went to
+     * as each series runs. Each worker adds up its own loans and the workers' totals are then
+     * combined, so no schedule is ever gone over twice.
+     * @return the interest and principal paid over every loan, by year and in total, and the
+     *         sum of their balances after their last payments
+     */
+    public PaymentTotals portfolioTotals(List<Loan> loans) {
+
+        long start = System.nanoTime();
+
+        PaymentTotals totals = inPool(() -> loans.parallelStream().map(loan -> {
+
+            if (loan.getPayment() == null) {
+
+                CalculatorMetrics.invalid("payment");
+                throw new IllegalArgumentException("No payment given for payseries");
+            }
+
+            return loan.newFigures().paymentSeriesTotals(loan.getPayment(), loan.getMonths(), PaymentListener.SILENT);
+
+        }).reduce(PaymentTotals.NONE, PaymentTotals::plus));
+
+        CalculatorMetrics.time(CalculatorMetrics.Operation.BATCH_PAYSERIES, start);
+
+        return totals;
+    }
+
+    /**
+     * Finds the payment that pays each loan off in its number of months.
+     * @return each loan's minimum monthly payment
+     */
+    public BatchResult<BigDecimal> minimumPayments(List<Loan> loans) {
+
+        return minimumPayments(loans, Precision.EXACT);
+    }
+
+    /**
+     * Same as above, worked out as carefully as asked, so a screening run over a whole
+     * portfolio can stay on the double engine.
+     * @return each loan's minimum monthly payment
+     */
+    public BatchResult<BigDecimal> minimumPayments(List<Loan> loans, Precision precision) {
+
+        return run(CalculatorMetrics.Operation.BATCH_MINPAY, loans,
+                loan -> loan.newFigures().monthlyPaymentNeeded(loan.getMonths(), precision));
+    }
+
+    /**
+     * Finds the payment that pays each loan off in its number of months, like minimumPayments,
+     * but solves the loans in order of rate, start date, term and balance so that each one can
+     * start from the loan before it. Within a run of loans that only differ in balance, the
+     * payment grows in step with the balance, so the last answer scaled up to this loan's
+     * balance is usually already within EPSILON. The sorted loans are split into chunks that
+     * run in parallel, and the first loan of each chunk is solved cold.
+     * @param countSavings also solve every loan cold from the annuity guess, to report how many
+     *                     schedule replays the warm start saved
+     * @return each loan's minimum monthly payment, in the order the loans went in
+     */
+    public BulkSolveResult minimumPaymentsWarmStarted(List<Loan> loans, boolean countSavings) {
+
+        long start = System.nanoTime();
+
+        Integer[] order = new Integer[loans.size()];
+
+        for (int i = 0; i < order.length; i++) {
+
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (a, b) -> compareForWarmStart(loans.get(a), loans.get(b)));
+
+        BigDecimal[] payments = new BigDecimal[order.length];
+        LongAdder iterations = new LongAdder();
+        LongAdder coldIterations = new LongAdder();
+        int chunks = (order.length + WARM_START_CHUNK - 1) / WARM_START_CHUNK;
+
+        inPool(() -> {
+
+            IntStream.range(0, chunks).parallel().forEach(chunk -> {
+
+                Loan previous = null;
+                BigDecimal previousPayment = null;
+                int end = Math.min(order.length, (chunk + 1) * WARM_START_CHUNK);
+
+                for (int i = chunk * WARM_START_CHUNK; i < end; i++) {
+
+                    Loan loan = loans.get(order[i]);
+                    PaymentSolver solver = new PaymentSolver(loan.newFigures());
+                    PaymentSolution solution;
+
+                    if (previous != null && sameTerms(previous, loan)) {
+
+                        solution = solver.solveFrom(loan.getMonths(), scaledGuess(previous, previousPayment, loan),
+                                lowerBound(previous, previousPayment, loan), null);
+
+                    } else {
+
+                        solution = solver.solve(loan.getMonths());
+                    }
+
+                    payments[order[i]] = solution.getPayment();
+                    iterations.add(solution.getIterations());
+
+                    if (countSavings) {
+
+                        coldIterations.add(solver.solve(loan.getMonths()).getIterations());
+                    }
+
+                    previous = loan;
+                    previousPayment = solution.getPayment();
+                }
+            });
+
+            return null;
+        });
+
+        CalculatorMetrics.time(CalculatorMetrics.Operation.BATCH_MINPAY_WARM, start);
+
+        return new BulkSolveResult(Arrays.asList(payments), iterations.sum(),
+                countSavings ? coldIterations.sum() : BulkSolveResult.NOT_MEASURED, System.nanoTime() - start);
+    }
+
+    /**
+     * Makes each loan's payment for its number of months on the fixed point engine, and writes
+     * each loan's balance after its last payment back into the book in place.
+     */
+    public BatchResult<Void> payoffSchedules(LoanBook book) {
+
+        return run(CalculatorMetrics.Operation.BATCH_PAYSERIES, book, (simulator, balance, index) -> {
+
+            simulator.paymentSeries(balance, book.getStartYear(index), book.getStartMonth(index),
+                    book.getPaymentUnits(index), book.getMonths(index));
+            book.writeBalance(index, balance);
+        });
+    }
+
+    /**
+     * Finds the payment that pays each loan off in its number of months on the fixed point
+     * engine, and stores it as the loan's minimum payment in the book. The payment each loan
+     * came with is left as it was.
+     */
+    public BatchResult<Void> minimumPayments(LoanBook book) {
+
+        // the solver's trial balance, reused across each worker's loans like the balance itself
+        ThreadLocal<FixedPointBalance> scratches = ThreadLocal.withInitial(FixedPointBalance::new);
+
+        return run(CalculatorMetrics.Operation.BATCH_MINPAY, book, (simulator, balance, index) ->
+                book.setMinimumPaymentUnits(index, simulator.monthlyPaymentNeeded(balance, scratches.get(),
+                        book.getStartYear(index), book.getStartMonth(index), book.getMonths(index))));
+    }
+
+    private <T> BatchResult<T> run(CalculatorMetrics.Operation operation, List<Loan> loans,
+                                   Function<Loan, T> work) {
+
+        long start = System.nanoTime();
+
+        // a parallel stream started from inside the pool runs on that pool's threads
+        List<T> results = inPool(() -> loans.parallelStream().map(work).collect(Collectors.toList()));
+
+        CalculatorMetrics.time(operation, start);
+
+        return new BatchResult<>(results, System.nanoTime() - start);
+    }
+
+    private BatchResult<Void> run(CalculatorMetrics.Operation operation, LoanBook book, BookWork work) {
+
+        long start = System.nanoTime();
+
+        // loans in a book tend to share a handful of rates, so each rate's tables are only built once
+        Map<Long, FixedPointSimulator> simulators = new ConcurrentHashMap<>();
+        ThreadLocal<FixedPointBalance> balances = ThreadLocal.withInitial(FixedPointBalance::new);
+
+        inPool(() -> {
+
+            IntStream.range(0, book.size()).parallel().forEach(index -> {
+
+                long rate = book.getAnnualRateUnits(index);
+                DayCount dayCount = book.getDayCount(index);
+
+                FixedPointSimulator simulator = simulators.computeIfAbsent(
+                        rate * DayCount.values().length + dayCount.ordinal(),
+                        key -> new FixedPointSimulator(FixedPointBalance.toDollars(rate), dayCount));
+
+                FixedPointBalance balance = balances.get();
+                book.readBalance(index, balance);
+                work.run(simulator, balance, index);
+            });
+
+            return null;
+        });
+
+        CalculatorMetrics.time(operation, start);
+
+        return new BatchResult<>(book.size(), System.nanoTime() - start);
+    }
+
+    private <T> T inPool(Callable<T> task) {
+
+        try {
+
+            return mPool.submit(task).get();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch run was interrupted", e);
+
+        } catch (ExecutionException e) {
+
+            if (e.getCause() instanceof RuntimeException) {
+
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Reads one loan per line from a batch file and runs the given mode over all of them.
+     * A LoanBook file (ending in LoanBook.EXTENSION) is run in place instead, with the
+     * results written back into it: payseries replaces each loan's balance, and minpay fills in
+     * each loan's minimum payment.
+     * @param mode "payseries", "minpay", "minpay-warm" to warm start the solves from
+     *             neighbouring loans, "minpay-warm-report" to also solve every loan cold and
+     *             report the replays the warm start saved, which takes about twice as long, or
+     *             "minpay-screening" or "minpay-verified" to solve at that Precision (only
+     *             payseries and minpay for LoanBooks)
+     * @return the batch result, for printing
+     */
+    public BatchResult<?> runFile(String mode, String path) {
+
+        if (path.endsWith(LoanBook.EXTENSION)) {
+
+            try (LoanBook book = LoanBook.open(Paths.get(path))) {
+
+                switch (mode) {
+
+                    case "payseries":
+                        return payoffSchedules(book);
+
+                    case "minpay":
+                        return minimumPayments(book);
+
+                    default:
+                        CalculatorMetrics.invalid("batchMode");
+                        throw new IllegalArgumentException("Batch mode must be payseries or minpay");
+                }
+
+            } catch (IOException e) {
+
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        List<Loan> loans;
+
+        try (Stream<String> lines = Files.lines(Paths.get(path))) {
+
+            loans = lines.map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .map(Loan::parse)
+                    .collect(Collectors.toList());
+
+        } catch (IOException e) {
+
+            throw new UncheckedIOException(e);
+        }
+
+        switch (mode) {
+
+            case "payseries":
+                return payoffSchedules(loans);
+
+            case "minpay":
+                return minimumPayments(loans);
+
+            case "minpay-warm":
+                return minimumPaymentsWarmStarted(loans, false);
+
+            case "minpay-warm-report":
+                return minimumPaymentsWarmStarted(loans, true);
+
+            case "minpay-screening":
+                return minimumPayments(loans, Precision.SCREENING);
+
+            case "minpay-verified":
+                return minimumPayments(loans, Precision.VERIFIED);
+
+            default:
+                CalculatorMetrics.invalid("batchMode");
+                throw new IllegalArgumentException("Batch mode must be payseries, minpay, minpay-warm, "
+                        + "minpay-warm-report, minpay-screening or minpay-verified");
+        }
+    }
+
+    // loans with the same rate, start and term sit next to each other, smallest balance first
+    private static int compareForWarmStart(Loan a, Loan b) {
+
+        int result = a.getAnnualRate().compareTo(b.getAnnualRate());
+
+        if (result == 0) {
+            result = a.getDayCount().compareTo(b.getDayCount());
+        }
+
+        if (result == 0) {
+            result = Integer.compare(a.getStartYear() * 12 + a.getStartMonth(), b.getStartYear() * 12 + b.getStartMonth());
+        }
+
+        if (result == 0) {
+            result = Integer.compare(a.getMonths(), b.getMonths());
+        }
+
+        return result != 0 ? result : total(a).compareTo(total(b));
+    }
+
+    // true if the two loans only differ in their balances
+    private static boolean sameTerms(Loan a, Loan b) {
+
+        return a.getAnnualRate().compareTo(b.getAnnualRate()) == 0 && a.getDayCount() == b.getDayCount()
+                && a.getStartYear() == b.getStartYear() && a.getStartMonth() == b.getStartMonth()
+                && a.getMonths() == b.getMonths();
+    }
+
+    // the neighbour's payment per dollar owed, times what this loan owes
+    private static BigDecimal scaledGuess(Loan previous, BigDecimal previousPayment, Loan loan) {
+
+        BigDecimal previousTotal = total(previous);
+
+        if (previousTotal.signum() == 0) {
+
+            return previousPayment;
+        }
+
+        return previousPayment.multiply(total(loan), DepressingFigures.SIG_FIGS_AND_ROUNDING)
+                .divide(previousTotal, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+    }
+
+    // a loan owing at least as much as its neighbour needs at least its payment. EPSILON less
+    // than that leaves at least EPSILON a month more behind, so it is always too low
+    private static BigDecimal lowerBound(Loan previous, BigDecimal previousPayment, Loan loan) {
+
+        if (loan.getPrincipal().compareTo(previous.getPrincipal()) >= 0
+                && loan.getInterest().compareTo(previous.getInterest()) >= 0) {
+
+            BigDecimal low = previousPayment.subtract(DepressingFigures.EPSILON, DepressingFigures.SIG_FIGS_AND_ROUNDING);
+
+            return low.signum() > 0 ? low : BigDecimal.ZERO;
+        }
+
+        return BigDecimal.ZERO;
+    }
+
+    private static BigDecimal total(Loan loan) {
+
+        return loan.getPrincipal().add(loan.getInterest(), DepressingFigures.SIG_FIGS_AND_ROUNDING);
+    }
+
+    // one loan's work in a book run, on a balance already read from the book
+    private interface BookWork {
+
+        void run(FixedPointSimulator simulator, FixedPointBalance balance, int index);
+    }
+}
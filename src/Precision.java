@@ -0,0 +1,37 @@
+/**
+ * How carefully an answer is worked out. Screening answers come from the double precision
+ * engine alone, which is many times faster but can be off by a fraction of a cent. Verified
+ * answers come from the same engine, except that any answer that came within VERIFY_MARGIN of a
+ * decision, such as the principal being within EPSILON of $0.00, is worked out again with
+ * BigDecimals, so it always meets the same EPSILON test the exact engine does. Exact answers
+ * only ever use BigDecimals.
+ */
+public enum Precision {
+
+    SCREENING,
+    VERIFIED,
+    EXACT;
+
+    /**
+     * How close a double precision result can get to a decision before a verified answer is
+     * worked out again with BigDecimals. Far more than doubles drift by over a loan's life.
+     */
+    public static final double VERIFY_MARGIN = 0.05;
+
+    /**
+     * Accepts the constant name in any case, e.g. "screening".
+     */
+    public static Precision parse(String name) {
+
+        for (Precision precision : values()) {
+
+            if (precision.name().equalsIgnoreCase(name)) {
+
+                return precision;
+            }
+        }
+
+        CalculatorMetrics.invalid("precision");
+        throw new IllegalArgumentException("Not a valid precision: " + name);
+    }
+}
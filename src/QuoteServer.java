@@ -0,0 +1,366 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the calculator modes as JSON over HTTP on the loopback interface, one path per mode:
+ *
+ *     GET /minpay?principal=250000&interest=25&months=360
+ *     GET /payseries?principal=250000&interest=25&payment=1500&months=12
+ *     GET /nextbal?principal=250000&interest=25
+ *     GET /bipay?principal=250000&interest=25&payment=1500
+ *     GET /compare?principal=250000&interest=25&payment=1500
+ *     GET /payoff?principal=250000&interest=25&payment=1500
+ *     GET /extra?principal=250000&interest=25&payment=1500&months=240
+ *
+ * Every mode also takes rate (as a decimal, default 0.05125), year, month (default this month)
+ * and dayCount (default Actual/365.25). Amounts come back unrounded. Bad input, including a
+ * principal or payment that isn't above $0.00, negative interest, months outside 1 to 1200, a
+ * rate outside 0 to 1 or a year outside 1900 to 2200, gets a 400 with an "error" message before
+ * anything is worked out. Minimum payment quotes are shared through a PaymentQuoteCache.
+ *
+ * Each request runs on a virtual thread of its own when the JVM has them (Java 21 on), so a
+ * quote that's waiting on a slow client doesn't hold up a pooled thread. On older JVMs requests
+ * run on a cached thread pool instead.
+ */
+public class QuoteServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 8080;
+
+    private static final int BACKLOG = 4096;
+    private static final int CACHED_QUOTES = 10000;
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+    private final PaymentQuoteCache mQuotes = new PaymentQuoteCache(CACHED_QUOTES);
+    private final Map<String, Mode> mModes = new HashMap<>();
+
+    /**
+     * @param port the port to listen on, or 0 to pick a free one
+     */
+    public QuoteServer(int port) throws IOException {
+
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        mExecutor = newRequestExecutor();
+        mServer.setExecutor(mExecutor);
+
+        mModes.put("/minpay", this::minpay);
+        mModes.put("/payseries", QuoteServer::payseries);
+        mModes.put("/nextbal", QuoteServer::nextbal);
+        mModes.put("/bipay", QuoteServer::bipay);
+        mModes.put("/compare", QuoteServer::compare);
+        mModes.put("/payoff", QuoteServer::payoff);
+        mModes.put("/extra", QuoteServer::extra);
+
+        mServer.createContext("/", this::handle);
+    }
+
+    public void start() {
+
+        mServer.start();
+    }
+
+    /**
+     * @return the port the server is listening on
+     */
+    public int getPort() {
+
+        return mServer.getAddress().getPort();
+    }
+
+    public PaymentQuoteCache getQuoteCache() {
+        return mQuotes;
+    }
+
+    /**
+     * Stops taking requests and waits a moment for the ones in flight to finish.
+     */
+    @Override
+    public void close() {
+
+        mServer.stop(1);
+        mExecutor.shutdown();
+
+        try {
+
+            mExecutor.awaitTermination(5, TimeUnit.SECONDS);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // a virtual thread per request when the JVM has them. looked up by reflection since the
+    // code is built to run on Java 8
+    static ExecutorService newRequestExecutor() {
+
+        try {
+
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+
+        } catch (ReflectiveOperationException e) {
+
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+
+        int status = 200;
+        String body;
+
+        try {
+
+            Mode mode = mModes.get(exchange.getRequestURI().getPath());
+
+            if (mode == null) {
+
+                status = 404;
+                body = error("Unknown mode. Try /minpay, /payseries, /nextbal, /bipay, /compare, /payoff or /extra");
+
+            } else if (!exchange.getRequestMethod().equals("GET")) {
+
+                status = 405;
+                body = error("Only GET is supported");
+
+            } else {
+
+                body = mode.quote(new Query(exchange.getRequestURI().getRawQuery()));
+            }
+
+        } catch (IllegalArgumentException e) { // includes NumberFormatException
+
+            status = 400;
+            body = error(e.getMessage() == null ? "Not a valid number" : e.getMessage());
+
+        } catch (RuntimeException e) {
+
+            status = 500;
+            body = error(String.valueOf(e));
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+
+            out.write(bytes);
+        }
+    }
+
+    private String minpay(Query query) {
+
+        int months = query.getMonths();
+        BigDecimal payment = mQuotes.monthlyPaymentNeeded(query.figures(), months);
+
+        return "{\"payment\":" + payment.toPlainString() + ",\"months\":" + months + "}";
+    }
+
+    private static String payseries(Query query) {
+
+        return balance(query.figures().makePaymentSeries(query.getPayment(), query.getMonths(),
+                PaymentListener.SILENT));
+    }
+
+    private static String nextbal(Query query) {
+
+        DepressingFigures figures = query.figures();
+
+        return balance(figures.nextMonthBalance(figures.getmCurrentMonth()));
+    }
+
+    private static String bipay(Query query) {
+
+        return balance(query.figures().makeBiMonthlyPayments(query.getPayment(), PaymentListener.SILENT));
+    }
+
+    private static String compare(Query query) {
+
+        PaymentComparison comparison = query.figures()
+                .compareMonthlyVsBimonthly(query.getPayment(), PaymentListener.SILENT);
+
+        return "{\"afterBimonthly\":" + comparison.getAfterBimonthly().toPlainString()
+                + ",\"afterMonthly\":" + comparison.getAfterMonthly().toPlainString()
+                + ",\"bimonthlyReduction\":" + comparison.getBimonthlyReduction().toPlainString()
+                + ",\"monthlyReduction\":" + comparison.getMonthlyReduction().toPlainString()
+                + ",\"interestSaved\":" + comparison.getInterestSaved().toPlainString() + "}";
+    }
+
+    private static String payoff(Query query) {
+
+        int months = query.figures().monthsToPayoff(query.getPayment());
+
+        // null rather than -1, so a client can't mistake it for a number of months
+        return "{\"months\":" + (months == PaymentSolver.NEVER ? "null" : String.valueOf(months)) + "}";
+    }
+
+    private static String extra(Query query) {
+
+        DepressingFigures figures = query.figures();
+        BigDecimal payment = query.getPayment();
+        int months = query.getMonths();
+
+        return "{\"oneTime\":" + figures.extraPrincipalNeeded(payment, months).toPlainString()
+                + ",\"monthly\":" + figures.extraMonthlyPaymentNeeded(payment, months).toPlainString() + "}";
+    }
+
+    private static String balance(BalancePair pair) {
+
+        return "{\"principal\":" + pair.getPrincipal().toPlainString()
+                + ",\"interest\":" + pair.getInterest().toPlainString() + "}";
+    }
+
+    private static String error(String message) {
+
+        StringBuilder sb = new StringBuilder("{\"error\":\"");
+
+        for (int i = 0; i < message.length(); i++) {
+
+            char c = message.charAt(i);
+
+            if (c == '"' || c == '\\') {
+
+                sb.append('\\').append(c);
+
+            } else if (c < 0x20) {
+
+                sb.append(String.format("\\u%04x", (int) c));
+
+            } else {
+
+                sb.append(c);
+            }
+        }
+
+        return sb.append("\"}").toString();
+    }
+
+    private interface Mode {
+
+        String quote(Query query);
+    }
+
+    /**
+     * The query string of one request, and the loan it describes.
+     */
+    private static final class Query {
+
+        private final Map<String, String> mParams = new HashMap<>();
+
+        Query(String rawQuery) {
+
+            if (rawQuery == null) {
+
+                return;
+            }
+
+            for (String pair : rawQuery.split("&")) {
+
+                int equals = pair.indexOf('=');
+
+                if (equals > 0) {
+
+                    mParams.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+                }
+            }
+        }
+
+        DepressingFigures figures() {
+
+            Calendar now = Calendar.getInstance();
+
+            BalancePair pair = new BalancePair(getAmount("principal"), getAmount("interest", BigDecimal.ZERO));
+            DepressingFigures.checkBalance(pair);
+
+            int year = has("year") ? getInt("year") : now.get(Calendar.YEAR);
+            DepressingFigures.checkYear(year);
+            int month = has("month") ? getInt("month") : now.get(Calendar.MONTH) + 1;
+            DayCount dayCount = has("dayCount") ? DayCount.parse(get("dayCount")) : DayCount.ACTUAL_365_25;
+
+            BigDecimal rate = getAmount("rate", DepressingFigures.ANNUAL_RATE);
+            DepressingFigures.checkRate(rate);
+
+            return new DepressingFigures(pair, year, month, rate, dayCount);
+        }
+
+        boolean has(String name) {
+
+            return mParams.containsKey(name);
+        }
+
+        String get(String name) {
+
+            String value = mParams.get(name);
+
+            if (value == null) {
+
+                CalculatorMetrics.invalid("missingParameter");
+                throw new IllegalArgumentException("Missing parameter: " + name);
+            }
+
+            return value;
+        }
+
+        int getInt(String name) {
+
+            return Integer.parseInt(get(name).trim());
+        }
+
+        // checked before any schedule is run, so a huge number of months can't tie up the thread
+        int getMonths() {
+
+            int months = getInt("months");
+            DepressingFigures.checkMonths(months);
+
+            return months;
+        }
+
+        BigDecimal getPayment() {
+
+            BigDecimal payment = getAmount("payment");
+            DepressingFigures.checkPayment(payment);
+
+            return payment;
+        }
+
+        BigDecimal getAmount(String name) {
+
+            return new BigDecimal(get(name).trim());
+        }
+
+        BigDecimal getAmount(String name, BigDecimal otherwise) {
+
+            return has(name) ? getAmount(name) : otherwise;
+        }
+
+        private static String decode(String s) {
+
+            try {
+
+                return URLDecoder.decode(s, "UTF-8");
+
+            } catch (UnsupportedEncodingException e) {
+
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * The interest rate a loan is charged over time. It starts at one yearly rate and can change
+ * to another from the first of any month onward. For each rate, the interest factor (daily rate
+ * times days) for every period of up to a month is worked out up front, so accruing a period's
+ * interest is a single multiply of the principal by a factor from the table.
+ *
+ * Schedules never change once built. withChange returns a new one, so repricing a loan
+ * means handing the calculator a different schedule.
+ */
+public final class RateSchedule {
+
+    // longest period kept in the tables. longer ones are worked out when asked for
+    private static final int TABLE_DAYS = 31;
+
+    private final DayCount dayCount;
+
+    // segment i applies from month key startKeys[i] up to the next segment's start
+    private final int[] startKeys;
+    private final BigDecimal[] annualRates;
+    private final BigDecimal[][] factors;
+
+    private RateSchedule(DayCount dayCount, int[] startKeys, BigDecimal[] annualRates) {
+
+        this.dayCount = dayCount;
+        this.startKeys = startKeys;
+        this.annualRates = annualRates;
+        this.factors = new BigDecimal[annualRates.length][];
+
+        for (int i = 0; i < annualRates.length; i++) {
+
+            factors[i] = factorTable(dayCount.dailyRate(annualRates[i]));
+        }
+    }
+
+    /**
+     * @param annualRate the yearly interest rate as a decimal, e.g. 0.05125 for 5.125%
+     * @param dayCount how days are counted, and how many days the yearly rate is spread over
+     * @return a schedule that charges the same rate for the whole life of the loan
+     */
+    public static RateSchedule fixed(BigDecimal annualRate, DayCount dayCount) {
+
+        return new RateSchedule(dayCount, new int[]{Integer.MIN_VALUE},
+                new BigDecimal[]{annualRate.stripTrailingZeros()});
+    }
+
+    /**
+     * @param year the year the new rate takes effect
+     * @param month a number 1-12 for the month the new rate takes effect, from the 1st
+     * @param annualRate the new yearly interest rate as a decimal
+     * @return a schedule with the rate changed from that month onward, replacing any later changes
+     */
+    public RateSchedule withChange(int year, int month, BigDecimal annualRate) {
+
+        LoanCalendar.checkMonth(month);
+
+        int key = monthKey(year, month);
+        int keep = 0;
+
+        while (keep < startKeys.length && startKeys[keep] < key) {
+
+            keep++;
+        }
+
+        if (keep == 0) {
+
+            // the change comes before anything else, so it becomes the only rate
+            return fixed(annualRate, dayCount);
+        }
+
+        int[] keys = Arrays.copyOf(startKeys, keep + 1);
+        BigDecimal[] rates = Arrays.copyOf(annualRates, keep + 1);
+        keys[keep] = key;
+        rates[keep] = annualRate.stripTrailingZeros();
+
+        return new RateSchedule(dayCount, keys, rates);
+    }
+
+    public DayCount getDayCount() {
+        return dayCount;
+    }
+
+    /**
+     * @return the yearly rate charged during the given month
+     */
+    public BigDecimal annualRateOn(int year, int month) {
+
+        return annualRates[segmentFor(year, month)];
+    }
+
+    /**
+     * @return the daily rate charged during the given month
+     */
+    public BigDecimal dailyRateOn(int year, int month) {
+
+        return factors[segmentFor(year, month)][1];
+    }
+
+    /**
+     * @return the days of interest the month accrues under this schedule's day count convention
+     */
+    public int daysInMonth(int year, int month) {
+
+        return dayCount.daysInMonth(year, month);
+    }
+
+    /**
+     * @param days the number of days of interest, starting in the given month
+     * @return the daily rate in effect that month times the number of days
+     */
+    public BigDecimal accrualFactor(int year, int month, int days) {
+
+        if (days < 0) {
+
+            CalculatorMetrics.invalid("days");
+            throw new IllegalArgumentException("Days can't be negative");
+        }
+
+        BigDecimal[] table = factors[segmentFor(year, month)];
+
+        if (days > TABLE_DAYS) {
+
+            return table[1].multiply(new BigDecimal(days), DepressingFigures.SIG_FIGS_AND_ROUNDING);
+        }
+
+        return table[days];
+    }
+
+    /**
+     * @return the factor for a whole month of interest in the given month
+     */
+    public BigDecimal monthlyFactor(int year, int month) {
+
+        return factors[segmentFor(year, month)][dayCount.daysInMonth(year, month)];
+    }
+
+    // the engines that keep their own factor tables look rates up by segment
+
+    int segmentCount() {
+
+        return annualRates.length;
+    }
+
+    BigDecimal dailyRateOfSegment(int segment) {
+
+        return factors[segment][1];
+    }
+
+    int segmentFor(int year, int month) {
+
+        int key = monthKey(year, month);
+        int segment = startKeys.length - 1;
+
+        // there are only ever a handful of changes, so a backwards scan beats a binary search
+        while (startKeys[segment] > key) {
+
+            segment--;
+        }
+
+        return segment;
+    }
+
+    /**
+     * @return the first month after the given one that a different rate starts in, as year * 12
+     *         + month - 1, or Integer.MAX_VALUE if the rate never changes again
+     */
+    int nextChangeKey(int year, int month) {
+
+        int segment = segmentFor(year, month);
+
+        return segment + 1 < startKeys.length ? startKeys[segment + 1] : Integer.MAX_VALUE;
+    }
+
+    private static int monthKey(int year, int month) {
+
+        return year * 12 + month - 1;
+    }
+
+    private static BigDecimal[] factorTable(BigDecimal dailyRate) {
+
+        BigDecimal[] table = new BigDecimal[TABLE_DAYS + 1];
+
+        for (int days = 0; days <= TABLE_DAYS; days++) {
+
+            table[days] = dailyRate.multiply(new BigDecimal(days), DepressingFigures.SIG_FIGS_AND_ROUNDING);
+        }
+
+        return table;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof RateSchedule)) {
+            return false;
+        }
+
+        RateSchedule other = (RateSchedule) o;
+
+        return dayCount == other.dayCount && Arrays.equals(startKeys, other.startKeys)
+                && Arrays.equals(annualRates, other.annualRates);
+    }
+
+    @Override
+    public int hashCode() {
+
+        int result = dayCount.hashCode();
+        result = 31 * result + Arrays.hashCode(startKeys);
+        result = 31 * result + Arrays.hashCode(annualRates);
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < startKeys.length; i++) {
+
+            if (i > 0) {
+
+                sb.append(", from ").append(startKeys[i] / 12).append('-').append(startKeys[i] % 12 + 1).append(' ');
+            }
+
+            sb.append(annualRates[i].toPlainString());
+        }
+
+        return sb.append(" (").append(dayCount).append(')').toString();
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes amortization schedule rows to a file through a fixed size buffer on a file channel.
+ * Rows are encoded as they arrive and the buffer goes to disk whenever it fills, so a schedule
+ * of any length is written in the same small amount of memory. Not safe to share between threads.
+ */
+public abstract class ScheduleExporter implements Closeable {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final FileChannel mChannel;
+    private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    private long mRowsWritten;
+
+    /**
+     * Opens the file for writing, replacing anything already in it.
+     */
+    protected ScheduleExporter(Path path) throws IOException {
+
+        mChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Adds one row to the file.
+     */
+    public void write(ScheduleRow row) throws IOException {
+
+        encode(row);
+        mRowsWritten++;
+    }
+
+    /**
+     * Writes every row of the stream, pulling each one only once the previous one is written.
+     * @return the number of rows written
+     */
+    public long writeAll(Stream<ScheduleRow> rows) throws IOException {
+
+        long written = 0;
+        Iterator<ScheduleRow> it = rows.iterator();
+
+        while (it.hasNext()) {
+
+            write(it.next());
+            written++;
+        }
+
+        return written;
+    }
+
+    public long getRowsWritten() {
+        return mRowsWritten;
+    }
+
+    /**
+     * Puts one row into the buffer, through room().
+     */
+    protected abstract void encode(ScheduleRow row) throws IOException;
+
+    /**
+     * @param bytes the most the caller is about to put, at most the buffer size
+     * @return the buffer, with at least that much room left in it
+     */
+    protected ByteBuffer room(int bytes) throws IOException {
+
+        if (mBuffer.remaining() < bytes) {
+
+            flush();
+        }
+
+        return mBuffer;
+    }
+
+    /**
+     * Writes whatever is in the buffer out to the file.
+     */
+    public void flush() throws IOException {
+
+        mBuffer.flip();
+
+        while (mBuffer.hasRemaining()) {
+
+            mChannel.write(mBuffer);
+        }
+
+        mBuffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        try {
+
+            flush();
+
+        } finally {
+
+            mChannel.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Works out a payment series one month at a time, only when the next row is asked for.
+ * Each row is one PaymentSimulator.step, the same as a month of paymentSeries, and it stops
+ * after the same month, when the principal goes more than EPSILON below $0.00, so a caller
+ * that stops reading after month N never pays for the months after it.
+ */
+public class ScheduleIterator implements Iterator<ScheduleRow> {
+
+    private final PaymentSimulator mSimulator;
+    private final BigDecimal mPayment;
+    private final int mMonthsToPay;
+
+    private BalancePair mBalance;
+    private int mCurrentYear;
+    private int mCurrentMonth;
+    private int mMonthsPaid;
+    private boolean mPaidOff;
+
+    public ScheduleIterator(PaymentSimulator simulator, BalancePair start, int startYear, int startMonth,
+                            BigDecimal payment, int monthsToPay) {
+
+        mSimulator = simulator;
+        mPayment = payment;
+        mMonthsToPay = monthsToPay;
+        mBalance = start;
+        mCurrentYear = startYear;
+        mCurrentMonth = startMonth;
+    }
+
+    @Override
+    public boolean hasNext() {
+
+        return !mPaidOff && mMonthsPaid < mMonthsToPay;
+    }
+
+    @Override
+    public ScheduleRow next() {
+
+        if (!hasNext()) {
+
+            throw new NoSuchElementException();
+        }
+
+        ScheduleRow row = mSimulator.step(mMonthsPaid + 1, mBalance, mPayment, mCurrentYear, mCurrentMonth);
+
+        mBalance = row.getBalance();
+        mCurrentYear = LoanCalendar.yearOfMonthAfter(mCurrentYear, mCurrentMonth);
+        mCurrentMonth = LoanCalendar.monthAfter(mCurrentMonth);
+        mMonthsPaid++;
+
+        // same early stop as the payment series once we've overpaid by more than EPSILON
+        mPaidOff = PaymentSimulator.isOverpaid(mBalance.getPrincipal());
+
+        return row;
+    }
+}
@@ -0,0 +1,95 @@
+import java.math.BigDecimal;
+
+/**
+ * One period of an amortization schedule: the payment made, how it was split between
+ * interest and principal, and the balance once that period's interest had accrued.
+ * Monthly rows are for the month as a whole; bi-monthly rows also carry the day they were paid on.
+ */
+public final class ScheduleRow {
+
+    private final int period;
+    private final int year;
+    private final int month;
+    private final int dayOfMonth;
+    private final BigDecimal payment;
+    private final BigDecimal interestPaid;
+    private final BigDecimal principalPaid;
+    private final BigDecimal interestAccrued;
+    private final BalancePair balance;
+
+    /**
+     * @param period 1 for the first payment, 2 for the second and so on
+     * @param year the year the payment was made in
+     * @param month a number 1-12 for the month the payment was made in
+     */
+    public ScheduleRow(int period, int year, int month, BigDecimal payment, BigDecimal interestPaid,
+                       BigDecimal principalPaid, BigDecimal interestAccrued, BalancePair balance) {
+
+        this(period, year, month, 0, payment, interestPaid, principalPaid, interestAccrued, balance);
+    }
+
+    /**
+     * @param period 1 for the first payment, 2 for the second and so on
+     * @param year the year the payment was made in
+     * @param month a number 1-12 for the month the payment was made in
+     * @param dayOfMonth the day the payment was made on, or 0 for the month as a whole
+     */
+    public ScheduleRow(int period, int year, int month, int dayOfMonth, BigDecimal payment, BigDecimal interestPaid,
+                       BigDecimal principalPaid, BigDecimal interestAccrued, BalancePair balance) {
+
+        this.period = period;
+        this.year = year;
+        this.month = month;
+        this.dayOfMonth = dayOfMonth;
+        this.payment = payment;
+        this.interestPaid = interestPaid;
+        this.principalPaid = principalPaid;
+        this.interestAccrued = interestAccrued;
+        this.balance = balance;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getMonth() {
+        return month;
+    }
+
+    /**
+     * @return the day the payment was made on, or 0 if the row is for the month as a whole
+     */
+    public int getDayOfMonth() {
+        return dayOfMonth;
+    }
+
+    public BigDecimal getPayment() {
+        return payment;
+    }
+
+    public BigDecimal getInterestPaid() {
+        return interestPaid;
+    }
+
+    public BigDecimal getPrincipalPaid() {
+        return principalPaid;
+    }
+
+    public BigDecimal getInterestAccrued() {
+        return interestAccrued;
+    }
+
+    public BalancePair getBalance() {
+        return balance;
+    }
+
+    @Override
+    public String toString() {
+
+        return "Balance in " + period + " month(s): \n" + balance;
+    }
+}
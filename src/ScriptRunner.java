@@ -0,0 +1,457 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the calculator modes without any prompts, for scripts. A loan is given the same way the
+ * prompts ask for it, principal first, then interest, then the mode and what the mode asks for,
+ * with the rate and start date optionally after that:
+ *
+ *     250000 25 minpay 360
+ *     250000 25 payseries 1500 12 rate=0.045 year=2024 month=3 dayCount=30/360
+ *     250000 25 minpay 360 precision=screening
+ *     250000 25 montecarlo 1500 100000 42 reset=12 volatility=0.01 floor=0.03 cap=0.08 missed=0.01
+ *
+ * One loan can be passed as the program's arguments, or any number read from standard input,
+ * one per line, in a single JVM. The modes are minpay, payseries, nextbal, bipay, compare,
+ * payoff, extra, totals (the payseries balance, then the interest and principal paid) and
+ * montecarlo. minpay and payoff also take a precision, see Precision. Each answer is printed
+ * on a line of its own, amounts rounded to the cent and separated by tabs. A line that can't be
+ * worked out prints "error" and why, so output lines always match up with input lines. The
+ * principal and any payment must be above $0.00, the interest can't be negative, any number of
+ * months must be from 1 to 1200, the rate from 0 to 1 and the year from 1900 to 2200, which are
+ * all checked before anything is worked out.
+ *
+ * montecarlo takes a payment, a number of paths (up to 10,000,000) and a seed, and runs
+ * MonteCarloSimulator for up to 1200 months. The rate moves every reset months if that's
+ * given, by volatility in steps of step (default 0.00125) between floor (default 0) and cap
+ * (default 5 points over the rate). missed is the chance a month's payment is missed, and
+ * extraChance the chance extra is paid on top. It prints the p50 and p95 payoff month, the
+ * number of paths never paid off, then the p50, p95 and mean interest paid.
+ *
+ * A scripted run doesn't register the metrics MBean or use the Scanner, and only montecarlo
+ * starts threads, so it only loads the classes the calculation itself needs. To start even
+ * faster, record a class data sharing archive once with the warmup mode, which runs every mode
+ * on a sample loan, and start every scripted run from it. The archive only covers classes
+ * loaded from jars, and needs Java 13 or later:
+ *
+ *     java -XX:ArchiveClassesAtExit=loancalcs.jsa -cp loancalcs.jar DepressingFigures warmup
+ *     java -XX:SharedArchiveFile=loancalcs.jsa -XX:TieredStopAtLevel=1 -cp loancalcs.jar DepressingFigures 250000 25 minpay 360
+ */
+public class ScriptRunner {
+
+    private static final String[] MODES = {"minpay", "payseries", "nextbal", "bipay", "compare", "payoff", "extra",
+            "totals", "montecarlo"};
+
+    // how many values each mode takes after its name, in the same order as MODES
+    private static final int[] MODE_VALUES = {1, 2, 0, 1, 1, 1, 2, 2, 3};
+
+    // the most montecarlo paths one line can ask for, so one line can't hold up a batch for hours
+    private static final int MAX_PATHS = 10000000;
+
+    private static final String[] WARMUP = {
+            "250000 25 minpay 360",
+            "250000 25 payseries 1500 12 rate=0.045 year=2024 month=3 dayCount=30/360",
+            "250000 25 nextbal",
+            "250000 25 bipay 1500",
+            "250000 25 compare 1500",
+            "250000 25 payoff 1500",
+            "250000 25 extra 1500 240",
+            "250000 25 totals 1500 24",
+            "250000 25 montecarlo 1500 1000 42 reset=12 volatility=0.01 missed=0.01 extraChance=0.1 extra=500"
+    };
+
+    private ScriptRunner() {
+    }
+
+    /**
+     * @return true if the arguments are a loan and a mode this can run
+     */
+    public static boolean isCommand(String[] args) {
+
+        return args.length >= 3 && modeIndex(args[2]) >= 0;
+    }
+
+    /**
+     * Works out the loan given as arguments and prints the answer.
+     * @return 0 if it worked, or 1 if the loan couldn't be worked out, with the reason on System.err
+     */
+    public static int runArgs(String[] args, PrintStream out) {
+
+        try {
+
+            out.println(answer(args));
+            return 0;
+
+        } catch (RuntimeException e) {
+
+            System.err.println("error\t" + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Works out every loan read from the input, one per line, printing an answer or error for
+     * each. Blank lines and lines starting with # are skipped.
+     * @return the number of lines that couldn't be worked out
+     */
+    public static int runLines(BufferedReader in, PrintStream out) throws IOException {
+
+        int errors = 0;
+        String line;
+
+        while ((line = in.readLine()) != null) {
+
+            String[] tokens = tokens(line);
+
+            if (tokens.length == 0 || tokens[0].startsWith("#")) {
+
+                continue;
+            }
+
+            try {
+
+                out.println(answer(tokens));
+
+            } catch (RuntimeException e) {
+
+                out.println("error\t" + e.getMessage());
+                errors++;
+            }
+        }
+
+        out.flush();
+
+        return errors;
+    }
+
+    /**
+     * Runs every mode once on a sample loan without printing anything, so that all of the
+     * classes a scripted run can need are loaded, e.g. while recording a class data sharing archive.
+     */
+    public static void warmUp() {
+
+        for (String line : WARMUP) {
+
+            answer(tokens(line));
+        }
+    }
+
+    /**
+     * @param tokens principal, interest, mode, the mode's values, then any options
+     * @return the answer, as one line of tab separated values
+     * @throws IllegalArgumentException if the loan, mode or values aren't valid
+     */
+    public static String answer(String[] tokens) {
+
+        if (tokens.length < 3) {
+
+            CalculatorMetrics.invalid("scriptLine");
+            throw new IllegalArgumentException("Expected principal, interest and mode");
+        }
+
+        int mode = modeIndex(tokens[2]);
+
+        if (mode < 0) {
+
+            CalculatorMetrics.invalid("mode");
+            throw new IllegalArgumentException("Not a valid mode: " + tokens[2]);
+        }
+
+        // LocalDate rather than Calendar, which loads the locale data on first use
+        LocalDate today = LocalDate.now();
+        BigDecimal rate = DepressingFigures.ANNUAL_RATE;
+        DayCount dayCount = DayCount.ACTUAL_365_25;
+        Precision precision = Precision.EXACT;
+        int year = today.getYear();
+        int month = today.getMonthValue();
+        List<String> values = new ArrayList<>();
+
+        // only for montecarlo; resetMonths stays 0 unless the rate is meant to move
+        int resetMonths = 0;
+        BigDecimal volatility = BigDecimal.ZERO;
+        BigDecimal step = new BigDecimal("0.00125");
+        BigDecimal floor = BigDecimal.ZERO;
+        BigDecimal cap = null;
+        double missedChance = 0;
+        double extraChance = 0;
+        BigDecimal extra = BigDecimal.ZERO;
+        String monteCarloOption = null;
+
+        for (int i = 3; i < tokens.length; i++) {
+
+            int equals = tokens[i].indexOf('=');
+
+            if (equals < 0) {
+
+                values.add(tokens[i]);
+                continue;
+            }
+
+            String name = tokens[i].substring(0, equals);
+            String value = tokens[i].substring(equals + 1);
+
+            switch (name) {
+
+                case "rate":
+                    rate = amount(value);
+                    break;
+
+                case "year":
+                    year = number(value);
+                    break;
+
+                case "month":
+                    month = number(value);
+                    break;
+
+                case "dayCount":
+                    dayCount = DayCount.parse(value);
+                    break;
+
+                case "precision":
+                    precision = Precision.parse(value);
+                    break;
+
+                case "reset":
+                    resetMonths = number(value);
+                    monteCarloOption = name;
+                    break;
+
+                case "volatility":
+                    volatility = amount(value);
+                    monteCarloOption = name;
+                    break;
+
+                case "step":
+                    step = amount(value);
+                    monteCarloOption = name;
+                    break;
+
+                case "floor":
+                    floor = amount(value);
+                    monteCarloOption = name;
+                    break;
+
+                case "cap":
+                    cap = amount(value);
+                    monteCarloOption = name;
+                    break;
+
+                case "missed":
+                    missedChance = amount(value).doubleValue();
+                    monteCarloOption = name;
+                    break;
+
+                case "extraChance":
+                    extraChance = amount(value).doubleValue();
+                    monteCarloOption = name;
+                    break;
+
+                case "extra":
+                    extra = amount(value);
+                    monteCarloOption = name;
+                    break;
+
+                default:
+                    CalculatorMetrics.invalid("scriptOption");
+                    throw new IllegalArgumentException("Not a valid option: " + name);
+            }
+        }
+
+        if (monteCarloOption != null && !MODES[mode].equals("montecarlo")) {
+
+            CalculatorMetrics.invalid("scriptOption");
+            throw new IllegalArgumentException(monteCarloOption + " is only for montecarlo");
+        }
+
+        if (values.size() != MODE_VALUES[mode]) {
+
+            CalculatorMetrics.invalid("scriptValues");
+            throw new IllegalArgumentException(MODES[mode] + " takes " + MODE_VALUES[mode] + " value(s) but got "
+                    + values.size());
+        }
+
+        BalancePair pair = new BalancePair(amount(tokens[0]), amount(tokens[1]));
+        DepressingFigures.checkBalance(pair);
+        DepressingFigures.checkRate(rate);
+        DepressingFigures.checkYear(year);
+
+        DepressingFigures figures = new DepressingFigures(pair, year, month, rate, dayCount);
+
+        switch (MODES[mode]) {
+
+            case "minpay":
+                return cents(figures.monthlyPaymentNeeded(months(values.get(0)), precision));
+
+            case "payseries":
+                return balance(figures.makePaymentSeries(payment(values.get(0)), months(values.get(1)),
+                        PaymentListener.SILENT));
+
+            case "nextbal":
+                return balance(figures.nextMonthBalance(figures.getmCurrentMonth()));
+
+            case "bipay":
+                return balance(figures.makeBiMonthlyPayments(payment(values.get(0)), PaymentListener.SILENT));
+
+            case "compare":
+                return cents(figures.compareMonthlyVsBimonthly(payment(values.get(0)), PaymentListener.SILENT)
+                        .getInterestSaved());
+
+            case "payoff":
+                int months = figures.monthsToPayoff(payment(values.get(0)), DepressingFigures.MAX_PAYOFF_MONTHS, precision);
+                return months == PaymentSolver.NEVER ? "never" : String.valueOf(months);
+
+            case "extra":
+                BigDecimal payment = payment(values.get(0));
+                int monthsToPayoff = months(values.get(1));
+                return cents(figures.extraPrincipalNeeded(payment, monthsToPayoff)) + '\t'
+                        + cents(figures.extraMonthlyPaymentNeeded(payment, monthsToPayoff));
+
+            case "montecarlo":
+                MonteCarloSimulator simulator = new MonteCarloSimulator(figures, payment(values.get(0)))
+                        .withMissedPayments(missedChance)
+                        .withExtraPayments(extraChance, extra);
+
+                if (resetMonths != 0) {
+
+                    simulator = simulator.withRateShocks(resetMonths, volatility, step, floor,
+                            cap != null ? cap : rate.add(new BigDecimal("0.05")));
+                }
+
+                MonteCarloResult result = simulator.run(paths(values.get(1)), seed(values.get(2)),
+                        DepressingFigures.MAX_PAYOFF_MONTHS);
+                return result.getPayoffMonth(50) + "\t" + result.getPayoffMonth(95) + '\t'
+                        + result.getNeverPaidOff() + '\t' + cents(result.getInterestPaid(50)) + '\t'
+                        + cents(result.getInterestPaid(95)) + '\t' + cents(result.getMeanInterestPaid());
+
+            default: // totals
+                PaymentTotals totals = figures.paymentSeriesTotals(payment(values.get(0)), months(values.get(1)),
+                        PaymentListener.SILENT);
+                return balance(totals.getFinalBalance()) + '\t' + cents(totals.getInterestPaid()) + '\t'
+                        + cents(totals.getPrincipalPaid());
+        }
+    }
+
+    private static int modeIndex(String name) {
+
+        for (int i = 0; i < MODES.length; i++) {
+
+            if (MODES[i].equals(name)) {
+
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    // splits on runs of spaces and tabs, without loading the regex classes String.split would
+    private static String[] tokens(String line) {
+
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+
+        for (int i = 0; i <= line.length(); i++) {
+
+            boolean blank = i == line.length() || line.charAt(i) == ' ' || line.charAt(i) == '\t';
+
+            if (blank && start >= 0) {
+
+                tokens.add(line.substring(start, i));
+                start = -1;
+
+            } else if (!blank && start < 0) {
+
+                start = i;
+            }
+        }
+
+        return tokens.toArray(new String[0]);
+    }
+
+    private static BigDecimal amount(String s) {
+
+        try {
+
+            return new BigDecimal(s);
+
+        } catch (NumberFormatException e) {
+
+            CalculatorMetrics.invalid("number");
+            throw new IllegalArgumentException("Not a valid number: " + s);
+        }
+    }
+
+    private static int number(String s) {
+
+        try {
+
+            return Integer.parseInt(s);
+
+        } catch (NumberFormatException e) {
+
+            CalculatorMetrics.invalid("number");
+            throw new IllegalArgumentException("Not a valid number: " + s);
+        }
+    }
+
+    private static long seed(String s) {
+
+        try {
+
+            return Long.parseLong(s);
+
+        } catch (NumberFormatException e) {
+
+            CalculatorMetrics.invalid("number");
+            throw new IllegalArgumentException("Not a valid number: " + s);
+        }
+    }
+
+    private static BigDecimal payment(String s) {
+
+        BigDecimal payment = amount(s);
+        DepressingFigures.checkPayment(payment);
+
+        return payment;
+    }
+
+    private static int paths(String s) {
+
+        int paths = number(s);
+
+        if (paths < 1 || paths > MAX_PATHS) {
+
+            CalculatorMetrics.invalid("paths");
+            throw new IllegalArgumentException("Paths must be a number from 1 to " + MAX_PATHS);
+        }
+
+        return paths;
+    }
+
+    // checked before any schedule is run, so one huge line can't hold up the rest of a batch
+    private static int months(String s) {
+
+        int months = number(s);
+        DepressingFigures.checkMonths(months);
+
+        return months;
+    }
+
+    // also used for the per-loan lines of a batch run, so both print amounts the same way
+    static String cents(BigDecimal amount) {
+
+        return amount.setScale(2, RoundingMode.HALF_EVEN).toPlainString();
+    }
+
+    static String balance(BalancePair pair) {
+
+        return cents(pair.getPrincipal()) + '\t' + cents(pair.getInterest());
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.Arrays;
+
+/**
+ * Counts non-negative whole numbers into log-linear buckets, so percentiles can be read off
+ * millions of values without keeping any of them. Values below 512 get a bucket each; above
+ * that every power of two is split into 256 buckets, so a percentile is never off by more than
+ * 1/512 of the value. Two histograms of separate values merge into the histogram of all of them,
+ * and because only whole counts are added up, the merged result is the same in any order.
+ * Not safe to share between threads: give each worker its own and merge them at the end.
+ */
+public class StreamingHistogram {
+
+    private static final int SUB_BITS = 9;
+    private static final int EXACT = 1 << SUB_BITS;
+    private static final int HALF = EXACT >> 1;
+
+    // enough buckets for every value up to Long.MAX_VALUE
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * HALF;
+
+    private final long[] mCounts = new long[BUCKETS];
+    private long mCount;
+    private long mSum;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax = Long.MIN_VALUE;
+
+    /**
+     * @param value the value to count, which can't be negative
+     */
+    public void record(long value) {
+
+        if (value < 0) {
+
+            CalculatorMetrics.invalid("histogramValue");
+            throw new IllegalArgumentException("Histogram values can't be negative");
+        }
+
+        mCounts[bucketOf(value)]++;
+        mCount++;
+        mSum += value;
+        mMin = Math.min(mMin, value);
+        mMax = Math.max(mMax, value);
+    }
+
+    /**
+     * Adds every value counted by the other histogram to this one.
+     */
+    public void merge(StreamingHistogram other) {
+
+        for (int i = 0; i < BUCKETS; i++) {
+
+            mCounts[i] += other.mCounts[i];
+        }
+
+        mCount += other.mCount;
+        mSum += other.mSum;
+        mMin = Math.min(mMin, other.mMin);
+        mMax = Math.max(mMax, other.mMax);
+    }
+
+    /**
+     * @param percentile a number 0-100
+     * @return the value that percentile of the counted values are at or below, to within
+     *         1/512 of it, or 0 if nothing has been counted
+     */
+    public long valueAtPercentile(double percentile) {
+
+        if (percentile < 0 || percentile > 100) {
+
+            CalculatorMetrics.invalid("percentile");
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+
+        if (mCount == 0) {
+
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * mCount));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+
+            seen += mCounts[i];
+
+            if (seen >= rank) {
+
+                // the middle of the bucket, but never outside what was actually seen
+                long middle = lowestIn(i) + (widthOf(i) - 1) / 2;
+
+                return Math.max(mMin, Math.min(mMax, middle));
+            }
+        }
+
+        return mMax;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getSum() {
+        return mSum;
+    }
+
+    public long getMin() {
+
+        return mCount == 0 ? 0 : mMin;
+    }
+
+    public long getMax() {
+
+        return mCount == 0 ? 0 : mMax;
+    }
+
+    public double getMean() {
+
+        return mCount == 0 ? 0 : (double) mSum / mCount;
+    }
+
+    private static int bucketOf(long value) {
+
+        if (value < EXACT) {
+
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+
+        return (shift + 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    private static long lowestIn(int bucket) {
+
+        if (bucket < EXACT) {
+
+            return bucket;
+        }
+
+        return (long) (bucket % HALF + HALF) << (bucket / HALF - 1);
+    }
+
+    private static long widthOf(int bucket) {
+
+        return bucket < EXACT ? 1 : 1L << (bucket / HALF - 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof StreamingHistogram)) {
+            return false;
+        }
+
+        StreamingHistogram other = (StreamingHistogram) o;
+
+        return mCount == other.mCount && mSum == other.mSum && Arrays.equals(mCounts, other.mCounts);
+    }
+
+    @Override
+    public int hashCode() {
+
+        return Arrays.hashCode(mCounts);
+    }
+
+    @Override
+    public String toString() {
+
+        return String.format("n=%d min=%d p50=%d p90=%d p99=%d max=%d",
+                mCount, getMin(), valueAtPercentile(50), valueAtPercentile(90), valueAtPercentile(99), getMax());
+    }
+}
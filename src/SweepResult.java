@@ -0,0 +1,58 @@
+/**
+ * The interest saved by paying bi-monthly instead of monthly for every cell of a sweep,
+ * held in one flat array of millionths of a cent. Cells are laid out payment by payment,
+ * then term by term, then start month by start month, in the order they were asked for.
+ */
+public final class SweepResult {
+
+    private final long[] saved;
+    private final int termCount;
+    private final int monthCount;
+
+    SweepResult(long[] saved, int paymentCount, int termCount, int monthCount) {
+
+        if (saved.length != paymentCount * termCount * monthCount) {
+
+            throw new IllegalArgumentException("Result array doesn't match the grid size");
+        }
+
+        this.saved = saved;
+        this.termCount = termCount;
+        this.monthCount = monthCount;
+    }
+
+    public int index(int payment, int term, int startMonth) {
+
+        return (payment * termCount + term) * monthCount + startMonth;
+    }
+
+    /**
+     * @param payment the position of the payment in the grid, not the amount
+     * @param term the position of the term in the grid
+     * @param startMonth the position of the start month in the grid
+     * @return the interest saved in that cell, in millionths of a cent
+     */
+    public long getInterestSavedUnits(int payment, int term, int startMonth) {
+
+        return saved[index(payment, term, startMonth)];
+    }
+
+    /**
+     * @return the interest saved in that cell, in dollars
+     */
+    public double getInterestSaved(int payment, int term, int startMonth) {
+
+        return (double) getInterestSavedUnits(payment, term, startMonth) / FixedPointBalance.UNITS_PER_DOLLAR;
+    }
+
+    /**
+     * @return the whole grid; cell (p, t, m) is at index(p, t, m). Not a copy, so don't change it
+     */
+    public long[] getCells() {
+        return saved;
+    }
+
+    public int size() {
+        return saved.length;
+    }
+}